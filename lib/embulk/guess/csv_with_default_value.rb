@@ -1,61 +1,174 @@
 module Embulk
   module Guess
+    require 'embulk/guess/schema_guess'
 
-    # TODO implement guess plugin to make this command work:
+    # Guesses columns and default_values of csv_with_default_value:
+    #
     #      $ embulk guess -g "csv_with_default_value" partial-config.yml
     #
-    #      Depending on the file format the plugin uses, you can use choose
-    #      one of binary guess (GuessPlugin), text guess (TextGuessPlugin),
-    #      or line guess (LineGuessPlugin).
+    # partial-config.yml must set "type: csv_with_default_value" to the parser.
+    # Only the first guess_sample_bytes bytes of the sample are tokenized by CsvTokenizer
+    # of this plugin, so guess of a large file is as fast as guess of a small file.
+    class CsvWithDefaultValue < GuessPlugin
+      Plugin.register_guess("csv_with_default_value", self)
 
-    #class CsvWithDefaultValue < GuessPlugin
-    #  Plugin.register_guess("csv_with_default_value", self)
-    #
-    #  def guess(config, sample_buffer)
-    #    if sample_buffer[0,2] == GZIP_HEADER
-    #      guessed = {}
-    #      guessed["getType"] = "csv_with_default_value"
-    #      guessed["property1"] = "guessed-value"
-    #      return {"parser" => guessed}
-    #    else
-    #      return {}
-    #    end
-    #  end
-    #end
-
-    #class CsvWithDefaultValue < TextGuessPlugin
-    #  Plugin.register_guess("csv_with_default_value", self)
-    #
-    #  def guess_text(config, sample_text)
-    #    js = JSON.parse(sample_text) rescue nil
-    #    if js && js["mykeyword"] == "keyword"
-    #      guessed = {}
-    #      guessed["getType"] = "csv_with_default_value"
-    #      guessed["property1"] = "guessed-value"
-    #      return {"parser" => guessed}
-    #    else
-    #      return {}
-    #    end
-    #  end
-    #end
-
-    #class CsvWithDefaultValue < LineGuessPlugin
-    #  Plugin.register_guess("csv_with_default_value", self)
-    #
-    #  def guess_lines(config, sample_lines)
-    #    all_line_matched = sample_lines.all? do |line|
-    #      line =~ /mypattern/
-    #    end
-    #    if all_line_matched
-    #      guessed = {}
-    #      guessed["getType"] = "csv_with_default_value"
-    #      guessed["property1"] = "guessed-value"
-    #      return {"parser" => guessed}
-    #    else
-    #      return {}
-    #    end
-    #  end
-    #end
+      DEFAULT_SAMPLE_BYTES = 32 * 1024
+      # a column gets a default value if at most this rate of its values fail to parse
+      DEFAULT_MAX_DIRTY_RATE = 0.1
+      MAX_BAD_TOKENS = 10
+      DELIMITER_CANDIDATES = [",", "\t", "|", ";"]
+      CLASSPATH = File.expand_path('../../../../classpath', __FILE__)
+      # defaults of LineDecoder, used when the other guess plugins have not guessed them
+      DEFAULT_CHARSET = "utf-8"
+      DEFAULT_NEWLINE = "CRLF"
+
+      def guess(config, sample_buffer)
+        parser_config = config.param("parser", :hash, default: {})
+        return {} unless parser_config["type"] == "csv_with_default_value"
+        parser_config = parser_config.merge(
+          "charset" => parser_config["charset"] || DEFAULT_CHARSET,
+          "newline" => parser_config["newline"] || DEFAULT_NEWLINE)
+
+        sample_bytes = parser_config.fetch("guess_sample_bytes", DEFAULT_SAMPLE_BYTES).to_i
+        max_dirty_rate = parser_config.fetch("guess_max_dirty_rate", DEFAULT_MAX_DIRTY_RATE).to_f
+
+        sample = cut_sample(sample_buffer, sample_bytes)
+        delimiter = parser_config["delimiter"] || guess_delimiter(sample)
+        return {} unless delimiter
+
+        rows = tokenize(parser_config.merge("delimiter" => delimiter), sample)
+        return {} if rows.empty?
+
+        header_line = guess_header_line(rows)
+        records = header_line ? rows[1..-1] : rows
+        column_count = rows.map {|row| row.size }.max
+        column_names = (0...column_count).map do |i|
+          name = header_line ? rows.first[i] : nil
+          name.nil? || name.empty? ? "c#{i}" : name
+        end
+
+        columns = []
+        default_values = {}
+        column_names.each_with_index do |name, i|
+          values = records.map {|row| row[i] }.compact
+          type, bad_tokens = guess_column_type(values, max_dirty_rate)
+          column = {"name" => name, "type" => type.to_s}
+          column["format"] = type.format if type.is_a?(SchemaGuess::TimestampTypeMatch)
+          columns << column
+          if bad_tokens
+            default_values[name] = suggest_default_value(type, bad_tokens)
+          end
+        end
+
+        guessed = {"delimiter" => delimiter}
+        guessed["skip_header_lines"] = 1 if header_line
+        guessed["columns"] = columns
+        guessed["default_values"] = default_values unless default_values.empty?
+        return {"parser" => guessed}
+      end
+
+      private
+
+      # bytes up to the last newline within sample_bytes
+      def cut_sample(sample_buffer, sample_bytes)
+        return sample_buffer if sample_buffer.bytesize <= sample_bytes
+        sample = sample_buffer.byteslice(0, sample_bytes)
+        last_newline = sample.rindex("\n")
+        last_newline ? sample.byteslice(0, last_newline + 1) : sample
+      end
+
+      # the candidate that appears the same number of times in most lines
+      def guess_delimiter(sample)
+        lines = sample.dup.force_encoding("ASCII-8BIT").split(/\r\n|\r|\n/).reject {|line| line.empty? }
+        return nil if lines.empty?
+        scores = DELIMITER_CANDIDATES.map do |delimiter|
+          counts = lines.map {|line| line.count(delimiter) }
+          most_common, frequency = counts.group_by {|c| c }.map {|c, cs| [c, cs.size] }.max_by {|c, n| n }
+          [delimiter, most_common > 0 ? frequency : 0]
+        end
+        delimiter, score = scores.max_by {|d, s| s }
+        score > 0 ? delimiter : DELIMITER_CANDIDATES.first
+      end
+
+      def tokenize(parser_config, sample)
+        loader = Embulk::JavaPlugin.classloader(CLASSPATH)
+        tokenizer_class = loader.loadClass("org.embulk.parser.csv_with_default_value.CsvTokenizer").ruby_class
+        task_class = loader.loadClass("org.embulk.parser.csv_with_default_value.CsvWithDefaultValueParserPlugin$PluginTask")
+        # columns are guessed from the records
+        parser_task = parser_config.merge("columns" => [], "default_values" => {}, "skip_header_lines" => 0)
+        parser_task.delete("header_line")
+
+        decoder = Java::org.embulk.spi.util.LineDecoder.new(
+          Java::org.embulk.spi.util.ListFileInput.new([[Buffer.from_ruby_string(sample).to_java]]),
+          parser_task.load_config(Java::org.embulk.spi.util.LineDecoder::DecoderTask))
+        tokenizer = tokenizer_class.new(decoder, parser_task.load_config(task_class))
+
+        rows = []
+        while tokenizer.nextFile
+          while tokenizer.nextRecord
+            begin
+              row = []
+              row << tokenizer.nextColumnOrNull while tokenizer.hasNextColumn
+              rows << row
+            rescue Java::org.embulk.spi.DataException
+              # broken record, or a quoted value cut at the end of the sample
+              tokenizer.skipCurrentLine
+            end
+          end
+        end
+        rows
+      end
+
+      # the first row is a header if it is all strings but the other rows are not
+      def guess_header_line(rows)
+        return false if rows.size < 2
+        first_types = SchemaGuess.types_from_array_records(rows[0, 1])
+        other_types = SchemaGuess.types_from_array_records(rows[1..-1])
+        first_types != other_types && first_types.all? {|t| ["string", "boolean"].include?(t) }
+      end
+
+      # returns the type and the distinct values that fail to parse as the type, or nil if none fails
+      def guess_column_type(values, max_dirty_rate)
+        return "string", nil if values.empty?
+        types = values.map {|value| SchemaGuess.types_from_array_records([[value]]).first }
+        merged = SchemaGuess.types_from_array_records(values.map {|value| [value] }).first
+        return merged, nil if merged != "string"
+
+        # the type that most values match except the dirty ones
+        candidates = []
+        long_count = types.count {|t| t == "long" }
+        candidates << ["long", long_count]
+        candidates << ["double", long_count + types.count {|t| t == "double" }]
+        types.select {|t| t.is_a?(SchemaGuess::TimestampTypeMatch) }.group_by {|t| t.format }.each_value do |ts|
+          candidates << [ts.first, ts.size]
+        end
+        candidates << ["json", types.count {|t| t == "json" }]
+        type, matched = candidates.max_by {|t, count| count }
+        return "string", nil if matched == 0 || (values.size - matched).to_f / values.size > max_dirty_rate
+
+        bad_tokens = values.zip(types).reject {|value, t| matches?(type, t) }.map {|value, t| value }.uniq
+        return type, bad_tokens.first(MAX_BAD_TOKENS)
+      end
+
+      def matches?(type, value_type)
+        if type.is_a?(SchemaGuess::TimestampTypeMatch)
+          value_type.is_a?(SchemaGuess::TimestampTypeMatch) && value_type.format == type.format
+        elsif type == "double"
+          value_type == "long" || value_type == "double"
+        else
+          value_type == type
+        end
+      end
+
+      # null is not allowed for long and double
+      def suggest_default_value(type, bad_tokens)
+        if type == "long" || type == "double"
+          {"default_value" => "0", "bad_tokens" => bad_tokens}
+        else
+          {"type" => "null", "bad_tokens" => bad_tokens}
+        end
+      end
+    end
 
   end
 end
@@ -0,0 +1,166 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigSource;
+import org.embulk.parser.csv_with_default_value.CsvWithDefaultValueParserPlugin.PluginTask;
+import org.embulk.spi.DataException;
+import org.embulk.spi.Exec;
+import org.embulk.spi.ExecAction;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each {@link ColumnConverter} in values per second, with the given percentage
+ * of values that can not be parsed. Such values get the column's default value for long,
+ * double and timestamp columns, false for boolean columns, and reject the record for json columns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ColumnConverterBenchmark
+{
+    private static final int VALUES = 1024;
+
+    // timestamp is parsed by FastTimestampParser, and timestamp_strptime by TimestampParser
+    @Param({"long", "double", "timestamp", "timestamp_strptime", "boolean", "string", "json"})
+    public String type;
+
+    @Param({"0", "1", "10", "50"})
+    public int dirtyPercent;
+
+    private EmbulkTestRuntime runtime;
+    private String[] values;
+    private ColumnConverter converter;
+    private PageBuilder pageBuilder;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        runtime = new EmbulkTestRuntime();
+        Map<String, String> column;
+        String defaultValue = null;
+        switch (type) {
+        case "timestamp":
+            column = ImmutableMap.of("name", "c", "type", "timestamp", "format", "%Y-%m-%d %H:%M:%S");
+            defaultValue = "1970-01-01 00:00:00";
+            break;
+        case "timestamp_strptime":
+            column = ImmutableMap.of("name", "c", "type", "timestamp", "format", "%d/%b/%Y:%H:%M:%S %z");
+            defaultValue = "01/Jan/1970:00:00:00 +0000";
+            break;
+        case "long":
+        case "double":
+            column = ImmutableMap.of("name", "c", "type", type);
+            defaultValue = "0";
+            break;
+        default:
+            column = ImmutableMap.of("name", "c", "type", type);
+        }
+        ConfigSource config = runtime.getExec().newConfigSource()
+                .set("columns", ImmutableList.of(column));
+        if (defaultValue != null) {
+            config.set("default_values", ImmutableMap.of("c", ImmutableMap.of("default_value", defaultValue)));
+        }
+
+        final PluginTask task = config.loadConfig(PluginTask.class);
+        final Schema schema = task.getSchemaConfig().toSchema();
+        converter = Exec.doWith(runtime.getExec(), new ExecAction<ColumnConverter>()
+        {
+            public ColumnConverter run()
+            {
+                return ColumnConversionPlan.compile(task, schema).getConverter(0);
+            }
+        });
+        pageBuilder = new PageBuilder(runtime.getBufferAllocator(), schema, new PageOutput()
+        {
+            public void add(Page page)
+            {
+                page.release();
+            }
+
+            public void finish()
+            {
+            }
+
+            public void close()
+            {
+            }
+        });
+
+        Random random = new Random(0);
+        values = new String[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = random.nextInt(100) < dirtyPercent ? "N/A" : validValue(random);
+        }
+    }
+
+    private String validValue(Random random)
+    {
+        switch (type) {
+        case "long":
+            return String.valueOf(random.nextInt());
+        case "double":
+            return String.valueOf(random.nextDouble() * 1000);
+        case "timestamp":
+            return String.format("2016-%02d-%02d %02d:%02d:%02d", 1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60));
+        case "timestamp_strptime":
+            return String.format("%02d/Oct/2016:%02d:%02d:%02d +0900", 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60));
+        case "boolean":
+            return random.nextBoolean() ? "true" : "false";
+        case "json":
+            return "{\"id\":" + random.nextInt() + ",\"tags\":[\"a\",\"b\"]}";
+        default:
+            return "value" + random.nextInt();
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pageBuilder.close();
+        runtime.getExec().cleanup();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int convert()
+    {
+        int rejected = 0;
+        for (String value : values) {
+            try {
+                converter.convert(value, pageBuilder);
+            } catch (DataException ex) {
+                rejected++;
+                pageBuilder.setNull(0);
+            }
+            pageBuilder.addRecord();
+        }
+        return rejected;
+    }
+}
@@ -0,0 +1,158 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigSource;
+import org.embulk.parser.csv_with_default_value.CsvWithDefaultValueParserPlugin.PluginTask;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Exec;
+import org.embulk.spi.ExecAction;
+import org.embulk.spi.util.ListFileInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link CsvTokenizer} in records per second, for files of 8 columns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvTokenizerBenchmark
+{
+    private static final int RECORDS = 10000;
+    private static final int COLUMNS = 8;
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    // unquoted: plain values, quoted: all values quoted and some with "" or delimiters,
+    // multi_char_delimiter: plain values separated by "::", multi_line: some quoted values span 2 or 3 lines
+    @Param({"unquoted", "quoted", "multi_char_delimiter", "multi_line"})
+    public String shape;
+
+    @Param({"true", "false"})
+    public boolean byteLevelTokenizer;
+
+    private PluginTask task;
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        final EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+        List<ImmutableMap<String, String>> columns = new ArrayList<>();
+        for (int i = 0; i < COLUMNS; i++) {
+            columns.add(ImmutableMap.of("name", "c" + i, "type", "string"));
+        }
+        final ConfigSource config = runtime.getExec().newConfigSource()
+                .set("newline", "LF")
+                .set("columns", columns)
+                .set("delimiter", shape.equals("multi_char_delimiter") ? "::" : ",")
+                .set("byte_level_tokenizer", byteLevelTokenizer);
+        task = Exec.doWith(runtime.getExec(), new ExecAction<PluginTask>()
+        {
+            public PluginTask run()
+            {
+                return config.loadConfig(PluginTask.class);
+            }
+        });
+        data = generate(shape, task.getDelimiter()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String generate(String shape, String delimiter)
+    {
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder();
+        for (int record = 0; record < RECORDS; record++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                if (column > 0) {
+                    sb.append(delimiter);
+                }
+                String value = "value" + random.nextInt(1000000) + "-" + Long.toHexString(random.nextLong());
+                switch (shape) {
+                case "quoted":
+                    sb.append('"').append(value).append(random.nextInt(4) == 0 ? "\"\",x" : "").append('"');
+                    break;
+                case "multi_line":
+                    if (random.nextInt(4) == 0) {
+                        sb.append('"').append(value).append('\n').append(value).append(random.nextBoolean() ? "\n" : "").append('"');
+                    } else {
+                        sb.append(value);
+                    }
+                    break;
+                default:
+                    sb.append(value);
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private CsvTokenizer newTokenizer()
+    {
+        List<Buffer> buffers = new ArrayList<>();
+        for (int offset = 0; offset < data.length; offset += BUFFER_SIZE) {
+            buffers.add(Buffer.wrap(data, offset, Math.min(BUFFER_SIZE, data.length - offset)));
+        }
+        CsvTokenizer tokenizer = new CsvTokenizer(LineSource.of(new ListFileInput(ImmutableList.of(buffers)), task), task);
+        tokenizer.nextFile();
+        return tokenizer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void nextColumn(Blackhole blackhole)
+    {
+        CsvTokenizer tokenizer = newTokenizer();
+        while (tokenizer.nextRecord()) {
+            for (int i = 0; i < COLUMNS; i++) {
+                blackhole.consume(tokenizer.nextColumn());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void nextColumnOrNull(Blackhole blackhole)
+    {
+        CsvTokenizer tokenizer = newTokenizer();
+        while (tokenizer.nextRecord()) {
+            for (int i = 0; i < COLUMNS; i++) {
+                blackhole.consume(tokenizer.nextColumnOrNull());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void nextColumnTokenOrNull(Blackhole blackhole)
+    {
+        CsvTokenizer tokenizer = newTokenizer();
+        while (tokenizer.nextRecord()) {
+            for (int i = 0; i < COLUMNS; i++) {
+                ColumnToken token = tokenizer.nextColumnTokenOrNull();
+                blackhole.consume(token == null ? 0 : token.length());
+            }
+        }
+    }
+}
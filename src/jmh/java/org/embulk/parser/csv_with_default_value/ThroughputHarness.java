@@ -0,0 +1,303 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.RandomManager;
+import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskSource;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Exec;
+import org.embulk.spi.ExecAction;
+import org.embulk.spi.MockFormatterPlugin;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.ParserPlugin;
+import org.embulk.spi.Schema;
+import org.embulk.spi.util.ListFileInput;
+import org.embulk.standards.CsvParserPlugin;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs {@code ParserPlugin.transaction} and {@code run} of this plugin, or of the csv parser of
+ * Embulk for comparison, over synthetic CSV in memory and prints rows/sec, MB/sec and bytes
+ * allocated per row by the task thread. Threads started by {@code parser_threads} and
+ * {@code pipelined} are not counted in the allocated bytes.
+ *
+ * Options are given as {@code key=value} arguments, e.g. {@code ./gradlew throughput -Pthroughput='rows=1000000 parser_threads=4'}.
+ * Options other than the ones below are set to the parser config as is.
+ * <ul>
+ * <li>parser: csv_with_default_value (default) or csv</li>
+ * <li>rows: number of rows (default 200000)</li>
+ * <li>columns: number of columns (default 8)</li>
+ * <li>types: comma-separated types assigned to the columns in turn (default long,double,string,timestamp,boolean)</li>
+ * <li>quoted: ratio of quoted values (default 0.1)</li>
+ * <li>invalid: ratio of values that can not be parsed as the column type (default 0.01)</li>
+ * <li>iterations, warmups: number of measured runs and runs before them (default 5 and 3)</li>
+ * <li>read_pages: reads the records of pages with MockFormatterPlugin if true (default false)</li>
+ * <li>seed: random seed of the data (default RANDOM_SEED environment variable or random)</li>
+ * </ul>
+ */
+public class ThroughputHarness
+{
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private final ParserPlugin plugin;
+    private final ConfigSource config;
+    private final byte[] data;
+    private final int rows;
+    private final boolean readPages;
+
+    private ThroughputHarness(ParserPlugin plugin, ConfigSource config, byte[] data, int rows, boolean readPages)
+    {
+        this.plugin = plugin;
+        this.config = config;
+        this.data = data;
+        this.rows = rows;
+        this.readPages = readPages;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        final Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            List<String> pair = Splitter.on('=').limit(2).splitToList(arg);
+            if (pair.size() != 2) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            options.put(pair.get(0), pair.get(1));
+        }
+
+        final EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+        final int iterations = Integer.parseInt(remove(options, "iterations", "5"));
+        final int warmups = Integer.parseInt(remove(options, "warmups", "3"));
+        final ThroughputHarness harness = Exec.doWith(runtime.getExec(), new ExecAction<ThroughputHarness>()
+        {
+            public ThroughputHarness run()
+            {
+                return create(options);
+            }
+        });
+        System.out.println(String.format("%d rows, %.1f MB", harness.rows, harness.data.length / 1e6));
+
+        Exec.doWith(runtime.getExec(), new ExecAction<Void>()
+        {
+            public Void run()
+            {
+                for (int i = 0; i < warmups; i++) {
+                    harness.runOnce();
+                }
+                for (int i = 1; i <= iterations; i++) {
+                    Result result = harness.runOnce();
+                    System.out.println(String.format("iteration %d: %d rows in %.3f s, %.0f rows/s, %.1f MB/s, %.0f bytes/row allocated",
+                                i, result.rows, result.nanos / 1e9,
+                                result.rows / (result.nanos / 1e9), harness.data.length / 1e6 / (result.nanos / 1e9),
+                                (double) result.allocatedBytes / result.rows));
+                }
+                return null;
+            }
+        });
+        runtime.getExec().cleanup();
+    }
+
+    private static String remove(Map<String, String> options, String key, String defaultValue)
+    {
+        String value = options.remove(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static ThroughputHarness create(Map<String, String> options)
+    {
+        String parser = remove(options, "parser", "csv_with_default_value");
+        int rows = Integer.parseInt(remove(options, "rows", "200000"));
+        int columns = Integer.parseInt(remove(options, "columns", "8"));
+        List<String> types = Splitter.on(',').splitToList(remove(options, "types", "long,double,string,timestamp,boolean"));
+        double quoted = Double.parseDouble(remove(options, "quoted", "0.1"));
+        double invalid = Double.parseDouble(remove(options, "invalid", "0.01"));
+        boolean readPages = Boolean.parseBoolean(remove(options, "read_pages", "false"));
+        String seed = options.remove("seed");
+        Random random = (seed == null ? new RandomManager() : new RandomManager(Long.parseLong(seed))).getRandom();
+
+        List<Map<String, String>> columnConfigs = new ArrayList<>();
+        Map<String, Object> defaultValues = new LinkedHashMap<>();
+        for (int i = 0; i < columns; i++) {
+            String name = "c" + i;
+            String type = types.get(i % types.size());
+            switch (type) {
+            case "timestamp":
+                columnConfigs.add(ImmutableMap.of("name", name, "type", type, "format", "%Y-%m-%d %H:%M:%S"));
+                defaultValues.put(name, ImmutableMap.of("default_value", "1970-01-01 00:00:00"));
+                break;
+            case "long":
+            case "double":
+                columnConfigs.add(ImmutableMap.of("name", name, "type", type));
+                defaultValues.put(name, ImmutableMap.of("default_value", "0"));
+                break;
+            default:
+                columnConfigs.add(ImmutableMap.of("name", name, "type", type));
+            }
+        }
+
+        ConfigSource config = Exec.newConfigSource()
+                .set("type", parser)
+                .set("newline", "LF")
+                .set("columns", columnConfigs);
+        if (parser.equals("csv_with_default_value")) {
+            // the csv parser of Embulk does not have default_values
+            config.set("default_values", defaultValues);
+        }
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            config.set(option.getKey(), option.getValue());
+        }
+
+        ParserPlugin plugin;
+        switch (parser) {
+        case "csv_with_default_value":
+            plugin = new CsvWithDefaultValueParserPlugin();
+            break;
+        case "csv":
+            plugin = new CsvParserPlugin();
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown parser: " + parser);
+        }
+
+        byte[] data = generate(random, rows, columnConfigs, quoted, invalid).getBytes(StandardCharsets.UTF_8);
+        return new ThroughputHarness(plugin, config, data, rows, readPages);
+    }
+
+    private static String generate(Random random, int rows, List<Map<String, String>> columns, double quoted, double invalid)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                String value;
+                if (random.nextDouble() < invalid) {
+                    value = "N/A";
+                } else {
+                    value = generateValue(random, columns.get(i).get("type"));
+                }
+                if (random.nextDouble() < quoted || value.indexOf('"') >= 0) {
+                    sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+                } else {
+                    sb.append(value);
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String generateValue(Random random, String type)
+    {
+        switch (type) {
+        case "boolean":
+            return random.nextBoolean() ? "true" : "false";
+        case "long":
+            return String.valueOf(random.nextInt());
+        case "double":
+            return String.valueOf(random.nextDouble() * 1000);
+        case "timestamp":
+            return String.format("2016-%02d-%02d %02d:%02d:%02d", 1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60));
+        case "json":
+            return "{\"id\":" + random.nextInt(1000) + ",\"name\":\"n" + random.nextInt(1000) + "\"}";
+        default:
+            return "value" + random.nextInt(100000);
+        }
+    }
+
+    private static class Result
+    {
+        private final long rows;
+        private final long nanos;
+        private final long allocatedBytes;
+
+        Result(long rows, long nanos, long allocatedBytes)
+        {
+            this.rows = rows;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private Result runOnce()
+    {
+        final TaskSource[] taskSource = new TaskSource[1];
+        final Schema[] schema = new Schema[1];
+        plugin.transaction(config, new ParserPlugin.Control()
+        {
+            public void run(TaskSource source, Schema outputSchema)
+            {
+                taskSource[0] = source;
+                schema[0] = outputSchema;
+            }
+        });
+
+        List<Buffer> buffers = new ArrayList<>();
+        for (int offset = 0; offset < data.length; offset += BUFFER_SIZE) {
+            buffers.add(Buffer.wrap(data, offset, Math.min(BUFFER_SIZE, data.length - offset)));
+        }
+        CountingPageOutput output = new CountingPageOutput(schema[0], readPages);
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = allocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        plugin.run(taskSource[0], schema[0], new ListFileInput(ImmutableList.of(buffers)), output);
+        long nanos = System.nanoTime() - startTime;
+        return new Result(output.rows, nanos, allocatedBytes(threadId) - allocatedBefore);
+    }
+
+    private static long allocatedBytes(long threadId)
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(threadId);
+        }
+        return 0;
+    }
+
+    private static class CountingPageOutput
+            implements PageOutput
+    {
+        private final Schema schema;
+        private final boolean readPages;
+        private long rows = 0;
+
+        CountingPageOutput(Schema schema, boolean readPages)
+        {
+            this.schema = schema;
+            this.readPages = readPages;
+        }
+
+        public void add(Page page)
+        {
+            if (readPages) {
+                rows += MockFormatterPlugin.readPage(schema, page).size();
+            } else {
+                rows += page.getRecordCount();
+            }
+            page.release();
+        }
+
+        public void finish()
+        {
+        }
+
+        public void close()
+        {
+        }
+    }
+}
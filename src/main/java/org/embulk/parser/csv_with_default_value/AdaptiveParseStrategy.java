@@ -0,0 +1,73 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.Column;
+
+/**
+ * Chooses per column whether values are parsed optimistically, with an exception thrown for
+ * each invalid value, or checked by {@link ValueSyntax} first so that certainly invalid values
+ * get the default value without an exception. The choice follows the failure rate of the last
+ * {@link #WINDOW} values with some hysteresis, and switches are counted in {@link DirtyDataReport}.
+ * Not thread-safe.
+ */
+final class AdaptiveParseStrategy
+{
+    static final int WINDOW = 256;  // must be a power of 2
+    // validate first if more than this many values in the window failed
+    static final int VALIDATE_THRESHOLD = WINDOW / 16;
+    // parse optimistically again if fewer than this many values in the window failed
+    static final int OPTIMISTIC_THRESHOLD = WINDOW / 64;
+
+    private final Column column;
+    private final DirtyDataReport report;
+    private final boolean[] window = new boolean[WINDOW];  // true for a failure
+    private int next = 0;
+    private int failures = 0;
+    private boolean validateFirst = false;
+
+    AdaptiveParseStrategy(Column column, DirtyDataReport report)
+    {
+        this.column = column;
+        this.report = report;
+    }
+
+    boolean validateFirst()
+    {
+        return validateFirst;
+    }
+
+    void succeeded()
+    {
+        record(false);
+    }
+
+    void failed()
+    {
+        record(true);
+    }
+
+    /**
+     * Records a value that failed the check of {@link ValueSyntax} without being parsed.
+     */
+    void rejected()
+    {
+        report.validationRejected(column);
+        record(true);
+    }
+
+    private void record(boolean failure)
+    {
+        if (window[next] != failure) {
+            window[next] = failure;
+            failures += failure ? 1 : -1;
+        }
+        next = (next + 1) & (WINDOW - 1);
+
+        if (!validateFirst && failures > VALIDATE_THRESHOLD) {
+            validateFirst = true;
+            report.strategySwitched(column, true);
+        } else if (validateFirst && failures < OPTIMISTIC_THRESHOLD) {
+            validateFirst = false;
+            report.strategySwitched(column, false);
+        }
+    }
+}
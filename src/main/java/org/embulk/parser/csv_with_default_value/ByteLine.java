@@ -0,0 +1,78 @@
+package org.embulk.parser.csv_with_default_value;
+
+import java.nio.charset.Charset;
+
+/**
+ * A line of an ASCII compatible input as undecoded bytes. {@link #charAt(int)} returns a byte
+ * as a char, which is the character itself for ASCII and a value from 0x80 to 0xff for a part
+ * of a non-ASCII character. Such bytes never equal the ASCII delimiters, quotes or digits that
+ * the tokenizer and converters look for. Only {@link #toString()} and {@link #appendTo} decode.
+ */
+final class ByteLine
+        implements CharSequence
+{
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private final Charset charset;
+
+    ByteLine(byte[] bytes, int offset, int length, Charset charset)
+    {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.charset = charset;
+    }
+
+    byte[] getBytes()
+    {
+        return bytes;
+    }
+
+    int getOffset()
+    {
+        return offset;
+    }
+
+    @Override
+    public int length()
+    {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        return (char) (bytes[offset + index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return new ByteLine(bytes, offset + start, end - start, charset);
+    }
+
+    String toString(int start, int end)
+    {
+        return new String(bytes, offset + start, end - start, charset);
+    }
+
+    void appendTo(StringBuilder sb, int start, int end)
+    {
+        for (int i = offset + start; i < offset + end; i++) {
+            byte b = bytes[i];
+            if (b < 0) {
+                // non-ASCII character
+                sb.append(new String(bytes, i, offset + end - i, charset));
+                return;
+            }
+            sb.append((char) b);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return toString(0, length);
+    }
+}
@@ -0,0 +1,178 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.base.Optional;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.FileInput;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Splits buffers of {@link FileInput} into {@link ByteLine}s without decoding them.
+ * Lines are separated by LF, CR or CRLF and a UTF-8 BOM at the beginning of a file is
+ * skipped, same as {@link org.embulk.spi.util.LineDecoder}.
+ *
+ * Bytes are copied from the buffers to a chunk that is shared by lines. A chunk is never
+ * overwritten: when it is full, the incomplete last line is copied to a new chunk, so
+ * lines that are kept by the tokenizer stay valid.
+ */
+class ByteLineSource
+        extends LineSource
+{
+    private static final int CHUNK_SIZE = 128 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+    private static final long LF = SwarScanner.pattern('\n');
+    private static final long CR = SwarScanner.pattern('\r');
+
+    private final FileInput input;
+    private final Charset charset;
+    private final boolean skipBom;
+
+    private byte[] chunk = EMPTY;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean endOfFile = true;
+
+    ByteLineSource(FileInput input, Charset charset)
+    {
+        this.input = input;
+        this.charset = charset;
+        this.skipBom = charset.equals(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Bytes can be scanned in place of characters if every byte below 0x80 is the ASCII
+     * character and all characters that the tokenizer and converters compare are ASCII.
+     */
+    static boolean supports(CsvWithDefaultValueParserPlugin.PluginTask task)
+    {
+        Charset charset = task.getCharset();
+        if (!charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.US_ASCII)
+                && !charset.equals(StandardCharsets.ISO_8859_1)) {
+            return false;
+        }
+        if (!isAscii(task.getDelimiter()) || !isAscii(task.getNullString()) || !isAscii(task.getCommentLineMarker())) {
+            return false;
+        }
+        if (task.getQuoteChar().isPresent() && task.getQuoteChar().get().getCharacter() >= 0x80) {
+            return false;
+        }
+        if (task.getEscapeChar().isPresent() && task.getEscapeChar().get().getCharacter() >= 0x80) {
+            return false;
+        }
+        for (ColumnDefaultValue value : task.getDefaultValues().values()) {
+            if (!isAscii(value.getBadTokens())) {
+                return false;
+            }
+        }
+        return isAscii(task.getTrueStrings()) && (!task.getFalseStrings().isPresent() || isAscii(task.getFalseStrings().get()));
+    }
+
+    private static boolean isAscii(Optional<String> s)
+    {
+        return !s.isPresent() || isAscii(s.get());
+    }
+
+    private static boolean isAscii(List<String> strings)
+    {
+        for (String s : strings) {
+            if (!isAscii(s)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String s)
+    {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    boolean nextFile()
+    {
+        if (!input.nextFile()) {
+            return false;
+        }
+        chunk = EMPTY;
+        pos = 0;
+        limit = 0;
+        endOfFile = false;
+        if (skipBom) {
+            while (limit - pos < 3 && fill()) {
+                // the first buffers may be shorter than a BOM
+            }
+            if (limit - pos >= 3 && chunk[pos] == (byte) 0xef && chunk[pos + 1] == (byte) 0xbb && chunk[pos + 2] == (byte) 0xbf) {
+                pos += 3;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    CharSequence poll()
+    {
+        int scanned = 0;  // number of bytes from pos known not to contain a line separator
+        while (true) {
+            int i = SwarScanner.indexOf(chunk, pos + scanned, limit, LF, CR);
+            if (i < limit) {
+                scanned = i - pos;
+                boolean cr = chunk[i] == '\r';
+                if (cr && i + 1 == limit && fill()) {
+                    // LF may follow in the next buffer. scan the CR again
+                    continue;
+                }
+                ByteLine line = new ByteLine(chunk, pos, scanned, charset);
+                pos = (cr && i + 1 < limit && chunk[i + 1] == '\n') ? i + 2 : i + 1;
+                return line;
+            }
+            scanned = limit - pos;
+            if (!fill()) {
+                if (pos == limit) {
+                    return null;
+                }
+                // last line without a line separator
+                ByteLine line = new ByteLine(chunk, pos, limit - pos, charset);
+                pos = limit;
+                return line;
+            }
+        }
+    }
+
+    // appends the next buffer to the chunk. pos may change. returns false at the end of the file.
+    private boolean fill()
+    {
+        if (endOfFile) {
+            return false;
+        }
+        Buffer buffer = input.poll();
+        while (buffer != null && buffer.limit() == 0) {
+            buffer.release();
+            buffer = input.poll();
+        }
+        if (buffer == null) {
+            endOfFile = true;
+            return false;
+        }
+
+        int size = buffer.limit();
+        if (limit + size > chunk.length) {
+            int remaining = limit - pos;
+            byte[] next = new byte[Math.max(remaining + size, CHUNK_SIZE)];
+            System.arraycopy(chunk, pos, next, 0, remaining);
+            chunk = next;
+            pos = 0;
+            limit = remaining;
+        }
+        buffer.getBytes(0, chunk, limit, size);
+        limit += size;
+        buffer.release();
+        return true;
+    }
+}
@@ -0,0 +1,349 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.config.ConfigException;
+import org.embulk.config.ConfigSource;
+import org.embulk.parser.csv_with_default_value.CsvWithDefaultValueParserPlugin.PluginTask;
+import org.embulk.spi.Column;
+import org.embulk.spi.ColumnConfig;
+import org.embulk.spi.ColumnVisitor;
+import org.embulk.spi.Exec;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.Schema;
+import org.embulk.spi.SchemaConfig;
+import org.embulk.spi.time.TimestampParser;
+import org.embulk.spi.type.Types;
+import org.embulk.spi.util.Timestamps;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column converters compiled once per task, indexed by the position of the column in {@code columns}.
+ * Columns with {@code skip: true} are not in the output schema and have no converter.
+ * With {@code header_mapping}, {@link #mapHeader(List)} rearranges the converters by the positions
+ * of the column names in the header line of each file.
+ */
+class ColumnConversionPlan
+{
+    private static final Column[] NO_COLUMNS = new Column[0];
+
+    private final ColumnConverter[] converters;  // null for skipped columns
+    private final String[] columnNames;  // by position in columns
+    private final boolean allowOptionalColumns;
+    private final boolean allowExtraColumns;
+    private final DirtyDataReport report;
+    private final ParserMetrics metrics;  // null if metrics are disabled
+    // converters by position in the records of the current file. The same as converters
+    // unless they are mapped by a header line. null for the values that are dropped
+    private ColumnConverter[] recordConverters;
+    // number of columns to read before the rest of the record is skipped at once, or
+    // recordConverters.length if all columns are read
+    private int readColumnCount;
+    private Column[] unmappedColumns = NO_COLUMNS;  // columns that are not in the header line
+
+    private ColumnConversionPlan(ColumnConverter[] converters, String[] columnNames, boolean allowOptionalColumns, boolean allowExtraColumns, DirtyDataReport report, ParserMetrics metrics)
+    {
+        this.converters = converters;
+        this.columnNames = columnNames;
+        this.allowOptionalColumns = allowOptionalColumns;
+        this.allowExtraColumns = allowExtraColumns;
+        this.report = report;
+        this.metrics = metrics;
+        this.recordConverters = converters;
+        this.readColumnCount = readColumnCount(converters, allowExtraColumns);
+    }
+
+    // skipped columns after the last read column are treated as extra columns if they are allowed
+    private static int readColumnCount(ColumnConverter[] converters, boolean allowExtraColumns)
+    {
+        if (!allowExtraColumns) {
+            return converters.length;
+        }
+        int count = converters.length;
+        while (count > 0 && converters[count - 1] == null) {
+            count--;
+        }
+        return count;
+    }
+
+    static boolean isSkipped(ColumnConfig column)
+    {
+        return column.getOption().get(Boolean.class, "skip", false);
+    }
+
+    /**
+     * @return the schema of {@code columns} without skipped columns
+     */
+    static Schema outputSchema(SchemaConfig schemaConfig)
+    {
+        Schema.Builder builder = Schema.builder();
+        for (ColumnConfig column : schemaConfig.getColumns()) {
+            if (!isSkipped(column)) {
+                builder.add(column.getName(), column.getType());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Validates {@code default_values} against {@code columns}, and the cache options of columns.
+     *
+     * @throws ConfigException
+     */
+    static void validate(PluginTask task)
+    {
+        resolveDefaultValues(task, Timestamps.newTimestampColumnParsers(task, task.getSchemaConfig()));
+        for (ColumnConfig col : task.getSchemaConfig().getColumns()) {
+            if (col.getType().equals(Types.STRING)
+                    && col.getOption().get(Long.class, "intern_cache_max_bytes", task.getInternCacheMaxBytes()) <= 0) {
+                throw new ConfigException(String.format("intern_cache_max_bytes of column '%s' must be positive.", col.getName()));
+            }
+        }
+    }
+
+    /**
+     * Resolves {@code default_values} into typed constants keyed by column name.
+     *
+     * @throws ConfigException
+     */
+    static Map<String, ResolvedDefaultValue> resolveDefaultValues(PluginTask task, TimestampParser[] timestampParsers)
+    {
+        Map<String, ColumnDefaultValue> defaultValues = task.getDefaultValues();
+        for (String name : defaultValues.keySet()) {
+            ColumnConfig col = task.getSchemaConfig().lookupColumn(name);
+            if (col == null) {
+                throw new ConfigException(String.format("column %s is not found.", name));
+            } else if (!ColumnDefaultValue.ALLOWED_TYPES.contains(col.getType())) {
+                throw new ConfigException(String.format("default value are allowed for only %s", ColumnDefaultValue.ALLOWED_TYPES_NAME));
+            }
+        }
+
+        Map<String, ResolvedDefaultValue> resolved = new HashMap<>();
+        List<ColumnConfig> columns = task.getSchemaConfig().getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnConfig col = columns.get(i);
+            ColumnDefaultValue value = defaultValues.get(col.getName());
+            if (value == null) {
+                continue;
+            }
+
+            if (value.getType() == ColumnDefaultValue.ValueType.IMMEDIATE && !value.getDefaultValue().isPresent()) {
+                throw new ConfigException(String.format("default_value is not set to column '%s'", col.getName()));
+            } else if (value.getType() == ColumnDefaultValue.ValueType.NULL && value.getDefaultValue().isPresent()) {
+                throw new ConfigException(String.format("default_value is set to column '%s', even though type is null.", col.getName()));
+            }
+
+            if (col.getType().equals(Types.LONG)) {
+                resolved.put(col.getName(), value.getType().resolveLong(value, col.getName()));
+            } else if (col.getType().equals(Types.DOUBLE)) {
+                resolved.put(col.getName(), value.getType().resolveDouble(value, col.getName()));
+            } else if (col.getType().equals(Types.TIMESTAMP)) {
+                resolved.put(col.getName(), value.getType().resolveTimestamp(value, timestampParsers[i], col.getName()));
+            } else if (col.getType().equals(Types.JSON)) {
+                resolved.put(col.getName(), value.getType().resolveJson(value, col.getName()));
+            }
+        }
+        return resolved;
+    }
+
+    static ColumnConversionPlan compile(final PluginTask task, Schema schema)
+    {
+        final DirtyDataReport report = new DirtyDataReport(schema, task.getMaxLoggedSamples(), Exec.getLogger(CsvWithDefaultValueParserPlugin.class));
+        final TimestampParser[] timestampParsers = Timestamps.newTimestampColumnParsers(task, task.getSchemaConfig());
+        final JsonTokenParser jsonParser = new JsonTokenParser(task.getCharset());
+        final Map<String, ResolvedDefaultValue> defaultValues = resolveDefaultValues(task, timestampParsers);
+        final TokenMatcher trueStrings = TokenMatcher.of(task.getTrueStrings());
+        final TokenMatcher falseStrings = task.getFalseStrings().isPresent() ? TokenMatcher.of(task.getFalseStrings().get()) : null;
+        final SchemaConfig schemaConfig = task.getSchemaConfig();
+        final ColumnConverter[] converters = new ColumnConverter[schemaConfig.getColumnCount()];
+        final int[] positions = new int[schema.getColumnCount()];  // output column index -> position in columns
+        final String[] columnNames = new String[schemaConfig.getColumnCount()];
+        for (int i = 0, index = 0; i < schemaConfig.getColumnCount(); i++) {
+            if (!isSkipped(schemaConfig.getColumn(i))) {
+                positions[index++] = i;
+            }
+            columnNames[i] = schemaConfig.getColumn(i).getName();
+        }
+
+        schema.visitColumns(new ColumnVisitor() {
+            public void booleanColumn(Column column)
+            {
+                converters[positions[column.getIndex()]] = new ColumnConverter.BooleanColumnConverter(column, trueStrings, falseStrings);
+            }
+
+            public void longColumn(Column column)
+            {
+                converters[positions[column.getIndex()]] = new ColumnConverter.LongColumnConverter(column, defaultValues.get(column.getName()), report);
+            }
+
+            public void doubleColumn(Column column)
+            {
+                converters[positions[column.getIndex()]] = new ColumnConverter.DoubleColumnConverter(column, defaultValues.get(column.getName()), report);
+            }
+
+            public void stringColumn(Column column)
+            {
+                int position = positions[column.getIndex()];
+                ConfigSource option = schemaConfig.getColumn(position).getOption();
+                int cacheSize = option.get(Integer.class, "intern_cache_size", task.getInternCacheSize());
+                long cacheBytes = option.get(Long.class, "intern_cache_max_bytes", task.getInternCacheMaxBytes());
+                StringInternCache cache = cacheSize > 0 ? new StringInternCache(cacheSize, cacheBytes) : null;
+                converters[position] = new ColumnConverter.StringColumnConverter(column, cache);
+            }
+
+            public void timestampColumn(Column column)
+            {
+                int position = positions[column.getIndex()];
+                ConfigSource option = schemaConfig.getColumn(position).getOption();
+                FastTimestampParser fastParser = FastTimestampParser.compile(
+                        option.get(String.class, "format", task.getDefaultTimestampFormat()),
+                        option.get(DateTimeZone.class, "timezone", task.getDefaultTimeZone()));
+                int cacheSize = option.get(Integer.class, "timestamp_cache_size", task.getTimestampCacheSize());
+                TimestampCache cache = cacheSize > 0 ? new TimestampCache(cacheSize) : null;
+                converters[position] = new ColumnConverter.TimestampColumnConverter(column, timestampParsers[position], fastParser, cache, defaultValues.get(column.getName()), report);
+            }
+
+            public void jsonColumn(Column column)
+            {
+                converters[positions[column.getIndex()]] = new ColumnConverter.JsonColumnConverter(column, jsonParser, defaultValues.get(column.getName()), report);
+            }
+        });
+
+        for (int i = 0; i < converters.length; i++) {
+            ColumnDefaultValue value = task.getDefaultValues().get(schemaConfig.getColumn(i).getName());
+            if (converters[i] != null && value != null && !value.getBadTokens().isEmpty()) {
+                converters[i] = new ColumnConverter.BadTokenColumnConverter(converters[i],
+                        TokenMatcher.of(value.getBadTokens()), defaultValues.get(schemaConfig.getColumn(i).getName()), report);
+            }
+        }
+
+        ParserMetrics metrics = task.getMetrics() ? new ParserMetrics(schema) : null;
+        return new ColumnConversionPlan(converters, columnNames, task.getAllowOptionalColumns(), task.getAllowExtraColumns(), report, metrics);
+    }
+
+    /**
+     * Maps the values of the records of the current file to columns by the names in its header
+     * line instead of by their positions. Values of names that are not in {@code columns} are
+     * dropped without being read, and columns that are not in the header line are set to null.
+     * If a name appears more than once in the header line, the first one is used.
+     */
+    void mapHeader(List<String> header)
+    {
+        Map<String, Integer> positionsByName = new HashMap<>();
+        for (int i = columnNames.length - 1; i >= 0; i--) {
+            positionsByName.put(columnNames[i], i);
+        }
+
+        int[] mapping = new int[header.size()];  // position in the header -> position in columns, or -1
+        for (int i = 0; i < mapping.length; i++) {
+            Integer position = positionsByName.remove(header.get(i));
+            mapping[i] = position == null ? -1 : position;
+        }
+
+        ColumnConverter[] mapped = new ColumnConverter[mapping.length];
+        for (int i = 0; i < mapping.length; i++) {
+            mapped[i] = mapping[i] < 0 ? null : converters[mapping[i]];
+        }
+        List<Column> unmapped = new ArrayList<>();
+        List<String> unmappedNames = new ArrayList<>();
+        for (ColumnConverter converter : converters) {
+            if (converter != null && positionsByName.containsKey(converter.getColumn().getName())) {
+                unmapped.add(converter.getColumn());
+                unmappedNames.add(converter.getColumn().getName());
+            }
+        }
+        if (!unmapped.isEmpty()) {
+            Exec.getLogger(CsvWithDefaultValueParserPlugin.class).warn(String.format("Columns %s are not in the header line %s and set to null", unmappedNames, header));
+        }
+
+        this.recordConverters = mapped;
+        this.readColumnCount = readColumnCount(mapped, allowExtraColumns);
+        this.unmappedColumns = unmapped.toArray(new Column[unmapped.size()]);
+    }
+
+    /**
+     * Reads the columns of the current record from the tokenizer and writes them to the page builder.
+     * {@link PageBuilder#addRecord()} is left to the caller.
+     */
+    void convertRecord(CsvTokenizer tokenizer, PageBuilder pageBuilder)
+    {
+        final boolean timed = metrics != null && metrics.sampleRecord();
+        for (Column column : unmappedColumns) {
+            pageBuilder.setNull(column);
+            report.nullValue(column);
+        }
+        for (int i = 0; i < readColumnCount; i++) {
+            ColumnConverter converter = recordConverters[i];
+            if (converter == null) {
+                skipColumn(tokenizer);
+                continue;
+            }
+            ColumnToken v = nextColumn(tokenizer);
+            if (v == null) {
+                pageBuilder.setNull(converter.getColumn());
+                report.nullValue(converter.getColumn());
+            } else {
+                try {
+                    if (timed) {
+                        long start = System.nanoTime();
+                        converter.convert(v, pageBuilder);
+                        metrics.conversionTimed(converter.getColumn(), System.nanoTime() - start);
+                    } else {
+                        converter.convert(v, pageBuilder);
+                    }
+                } catch (CsvRecordValidateException e) {
+                    report.recordRejected(converter.getColumn());
+                    throw e;
+                }
+            }
+        }
+        if (readColumnCount < recordConverters.length && !tokenizer.skipRestOfRecord(recordConverters.length - readColumnCount)) {
+            // the rest of the line has a quote, which may start a multi-line value in a skipped column,
+            // or too few columns, which are missing optional columns or an invalid record
+            for (int i = readColumnCount; i < recordConverters.length; i++) {
+                skipColumn(tokenizer);
+            }
+        }
+    }
+
+    /**
+     * @return the converter of the column at the position in {@code columns}, or null if it is skipped
+     */
+    ColumnConverter getConverter(int position)
+    {
+        return converters[position];
+    }
+
+    DirtyDataReport getReport()
+    {
+        return report;
+    }
+
+    /**
+     * @return the metrics of this plan, or null if {@code metrics} is disabled
+     */
+    ParserMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    private ColumnToken nextColumn(CsvTokenizer tokenizer)
+    {
+        if (allowOptionalColumns && !tokenizer.hasNextColumn()) {
+            //TODO warning
+            return null;
+        }
+        return tokenizer.nextColumnTokenOrNull();
+    }
+
+    private void skipColumn(CsvTokenizer tokenizer)
+    {
+        if (allowOptionalColumns && !tokenizer.hasNextColumn()) {
+            return;
+        }
+        tokenizer.skipColumn();
+    }
+}
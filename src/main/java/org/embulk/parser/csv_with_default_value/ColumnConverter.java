@@ -0,0 +1,302 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.json.JsonParseException;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.time.TimestampParseException;
+import org.embulk.spi.time.TimestampParser;
+
+/**
+ * Converts the value of one CSV column and writes it to a {@link PageBuilder}.
+ * Converters are created once per task by {@link ColumnConversionPlan} and are
+ * not thread-safe.
+ */
+abstract class ColumnConverter
+{
+    protected final Column column;
+
+    ColumnConverter(Column column)
+    {
+        this.column = column;
+    }
+
+    Column getColumn()
+    {
+        return column;
+    }
+
+    /**
+     * @param value non-null value of the column. It may be a reused view, so it must not be retained.
+     * @throws CsvRecordValidateException if the value is invalid and no default value is configured
+     */
+    abstract void convert(CharSequence value, PageBuilder pageBuilder);
+
+    /**
+     * Applies the default value to {@code bad_tokens} of the column without parsing them, and
+     * passes other values to the converter of the column type.
+     */
+    static class BadTokenColumnConverter
+            extends ColumnConverter
+    {
+        private final ColumnConverter converter;
+        private final TokenMatcher badTokens;
+        private final ResolvedDefaultValue defaultValue;
+        private final DirtyDataReport report;
+
+        BadTokenColumnConverter(ColumnConverter converter, TokenMatcher badTokens, ResolvedDefaultValue defaultValue, DirtyDataReport report)
+        {
+            super(converter.getColumn());
+            this.converter = converter;
+            this.badTokens = badTokens;
+            this.defaultValue = defaultValue;
+            this.report = report;
+        }
+
+        @Override
+        void convert(CharSequence value, PageBuilder pageBuilder)
+        {
+            if (badTokens.matches(value)) {
+                defaultValue.setTo(pageBuilder, column);
+                report.badTokenReplaced(column);
+            } else {
+                converter.convert(value, pageBuilder);
+            }
+        }
+    }
+
+    static class BooleanColumnConverter
+            extends ColumnConverter
+    {
+        private final TokenMatcher trueStrings;
+        private final TokenMatcher falseStrings;  // null if all values but trueStrings are false
+
+        BooleanColumnConverter(Column column, TokenMatcher trueStrings, TokenMatcher falseStrings)
+        {
+            super(column);
+            this.trueStrings = trueStrings;
+            this.falseStrings = falseStrings;
+        }
+
+        @Override
+        void convert(CharSequence value, PageBuilder pageBuilder)
+        {
+            if (trueStrings.matches(value)) {
+                pageBuilder.setBoolean(column, true);
+            } else if (falseStrings == null || falseStrings.matches(value)) {
+                pageBuilder.setBoolean(column, false);
+            } else {
+                throw new CsvRecordValidateException(String.format("Invalid boolean value '%s' of column '%s'", value, column.getName()));
+            }
+        }
+    }
+
+    static class LongColumnConverter
+            extends ColumnConverter
+    {
+        private final LongParser parser = new LongParser();
+        private final ResolvedDefaultValue defaultValue;
+        private final DirtyDataReport report;
+
+        LongColumnConverter(Column column, ResolvedDefaultValue defaultValue, DirtyDataReport report)
+        {
+            super(column);
+            this.defaultValue = defaultValue;
+            this.report = report;
+        }
+
+        @Override
+        void convert(CharSequence value, PageBuilder pageBuilder)
+        {
+            if (parser.tryParse(value)) {
+                pageBuilder.setLong(column, parser.getValue());
+            } else if (defaultValue != null) {
+                defaultValue.setTo(pageBuilder, column);
+                report.defaultApplied(column, value);
+            } else {
+                throw new CsvRecordValidateException(new NumberFormatException(String.format("For input string: \"%s\"", value)));
+            }
+        }
+    }
+
+    static class DoubleColumnConverter
+            extends ColumnConverter
+    {
+        private final ResolvedDefaultValue defaultValue;
+        private final DirtyDataReport report;
+        private final AdaptiveParseStrategy strategy;  // null if no default value is configured
+
+        DoubleColumnConverter(Column column, ResolvedDefaultValue defaultValue, DirtyDataReport report)
+        {
+            super(column);
+            this.defaultValue = defaultValue;
+            this.report = report;
+            this.strategy = defaultValue != null ? new AdaptiveParseStrategy(column, report) : null;
+        }
+
+        @Override
+        void convert(CharSequence value, PageBuilder pageBuilder)
+        {
+            if (strategy != null && strategy.validateFirst() && !ValueSyntax.mayBeDouble(value)) {
+                strategy.rejected();
+                defaultValue.setTo(pageBuilder, column);
+                report.defaultApplied(column, value);
+                return;
+            }
+            try {
+                pageBuilder.setDouble(column, Double.parseDouble(value.toString()));
+                if (strategy != null) {
+                    strategy.succeeded();
+                }
+            } catch (NumberFormatException e) {
+                if (defaultValue != null) {
+                    strategy.failed();
+                    defaultValue.setTo(pageBuilder, column);
+                    report.defaultApplied(column, value);
+                } else {
+                    throw new CsvRecordValidateException(e);
+                }
+            }
+        }
+    }
+
+    static class StringColumnConverter
+            extends ColumnConverter
+    {
+        private final StringInternCache cache;  // null if disabled
+
+        StringColumnConverter(Column column, StringInternCache cache)
+        {
+            super(column);
+            this.cache = cache;
+        }
+
+        @Override
+        void convert(CharSequence value, PageBuilder pageBuilder)
+        {
+            pageBuilder.setString(column, cache != null ? cache.intern(value) : value.toString());
+        }
+    }
+
+    static class TimestampColumnConverter
+            extends ColumnConverter
+    {
+        private final TimestampParser parser;
+        private final FastTimestampParser fastParser;  // null if the format is not supported
+        private final TimestampCache cache;  // null if disabled
+        private final ResolvedDefaultValue defaultValue;
+        private final DirtyDataReport report;
+        private final AdaptiveParseStrategy strategy;  // null if no default value is configured
+
+        TimestampColumnConverter(Column column, TimestampParser parser, FastTimestampParser fastParser, TimestampCache cache, ResolvedDefaultValue defaultValue, DirtyDataReport report)
+        {
+            super(column);
+            this.parser = parser;
+            this.fastParser = fastParser;
+            this.cache = cache;
+            this.defaultValue = defaultValue;
+            this.report = report;
+            this.strategy = defaultValue != null ? new AdaptiveParseStrategy(column, report) : null;
+        }
+
+        @Override
+        void convert(CharSequence value, PageBuilder pageBuilder)
+        {
+            if (fastParser != null) {
+                Timestamp timestamp = fastParser.parse(value);
+                if (timestamp != null) {
+                    pageBuilder.setTimestamp(column, timestamp);
+                    return;
+                }
+            }
+
+            String string = value.toString();
+            if (cache != null) {
+                Timestamp cached = cache.get(string);
+                if (cached == TimestampCache.FAILURE) {
+                    // only cached when a default value exists
+                    defaultValue.setTo(pageBuilder, column);
+                    report.defaultApplied(column, value);
+                    return;
+                } else if (cached != null) {
+                    pageBuilder.setTimestamp(column, cached);
+                    return;
+                }
+            }
+
+            if (strategy != null && strategy.validateFirst() && !ValueSyntax.mayBeTimestamp(value)) {
+                strategy.rejected();
+                if (cache != null) {
+                    cache.putFailure(string);
+                }
+                defaultValue.setTo(pageBuilder, column);
+                report.defaultApplied(column, value);
+                return;
+            }
+            try {
+                Timestamp timestamp = parser.parse(string);
+                if (cache != null) {
+                    cache.put(string, timestamp);
+                }
+                pageBuilder.setTimestamp(column, timestamp);
+                if (strategy != null) {
+                    strategy.succeeded();
+                }
+            } catch (TimestampParseException e) {
+                if (defaultValue != null) {
+                    strategy.failed();
+                    if (cache != null) {
+                        cache.putFailure(string);
+                    }
+                    defaultValue.setTo(pageBuilder, column);
+                    report.defaultApplied(column, value);
+                } else {
+                    throw new CsvRecordValidateException(e);
+                }
+            }
+        }
+    }
+
+    static class JsonColumnConverter
+            extends ColumnConverter
+    {
+        private final JsonTokenParser parser;
+        private final ResolvedDefaultValue defaultValue;
+        private final DirtyDataReport report;
+        private final AdaptiveParseStrategy strategy;  // null if no default value is configured
+
+        JsonColumnConverter(Column column, JsonTokenParser parser, ResolvedDefaultValue defaultValue, DirtyDataReport report)
+        {
+            super(column);
+            this.parser = parser;
+            this.defaultValue = defaultValue;
+            this.report = report;
+            this.strategy = defaultValue != null ? new AdaptiveParseStrategy(column, report) : null;
+        }
+
+        @Override
+        void convert(CharSequence value, PageBuilder pageBuilder)
+        {
+            if (strategy != null && strategy.validateFirst() && !ValueSyntax.mayBeJson(value)) {
+                strategy.rejected();
+                defaultValue.setTo(pageBuilder, column);
+                report.defaultApplied(column, value);
+                return;
+            }
+            try {
+                pageBuilder.setJson(column, parser.parse(value));
+                if (strategy != null) {
+                    strategy.succeeded();
+                }
+            } catch (JsonParseException e) {
+                if (defaultValue != null) {
+                    strategy.failed();
+                    defaultValue.setTo(pageBuilder, column);
+                    report.defaultApplied(column, value);
+                } else {
+                    throw new CsvRecordValidateException(e);
+                }
+            }
+        }
+    }
+}
@@ -12,11 +12,14 @@ import org.embulk.config.ConfigDefault;
 import org.embulk.config.ConfigException;
 import org.embulk.spi.Column;
 import org.embulk.spi.PageBuilder;
+import org.embulk.spi.json.JsonParseException;
+import org.embulk.spi.json.JsonParser;
 import org.embulk.spi.time.TimestampParseException;
 import org.embulk.spi.time.TimestampParser;
 import org.embulk.spi.type.Type;
 import org.embulk.spi.type.Types;
 
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -24,7 +27,7 @@ import java.util.Set;
 @JsonDeserialize(as = ColumnDefaultValueImpl.class)
 public interface ColumnDefaultValue {
 
-    Set<Type> ALLOWED_TYPES = ImmutableSet.<Type>of(Types.LONG, Types.DOUBLE, Types.DOUBLE, Types.TIMESTAMP);
+    Set<Type> ALLOWED_TYPES = ImmutableSet.<Type>of(Types.LONG, Types.DOUBLE, Types.TIMESTAMP, Types.JSON);
     String ALLOWED_TYPES_NAME = Joiner.on(",").join(ALLOWED_TYPES);
 
     @Config("default_value")
@@ -34,72 +37,127 @@ public interface ColumnDefaultValue {
     @ConfigDefault("immediate")
     ColumnDefaultValue.ValueType getType();
 
+    /**
+     * Values that are known to be invalid. They are replaced with the default value without being parsed.
+     */
+    @Config("bad_tokens")
+    @ConfigDefault("[]")
+    List<String> getBadTokens();
+
     interface DefaultValueSetter {
 
         /**
-         * @throws CsvRecordValidateException
+         * @throws ConfigException
          */
         void longValue(ColumnDefaultValue value, PageBuilder pageBuilder, Column column);
 
         /**
-         * @throws CsvRecordValidateException
+         * @throws ConfigException
          */
         void doubleValue(ColumnDefaultValue value, PageBuilder pageBuilder, Column column);
 
         /**
-         * @throws CsvRecordValidateException
+         * @throws ConfigException
          */
         void timestampValue(ColumnDefaultValue value, TimestampParser parser, PageBuilder pageBuilder, Column column);
 
+        /**
+         * @throws ConfigException if the value can not be used as a long
+         */
+        ResolvedDefaultValue resolveLong(ColumnDefaultValue value, String columnName);
+
+        /**
+         * @throws ConfigException if the value can not be used as a double
+         */
+        ResolvedDefaultValue resolveDouble(ColumnDefaultValue value, String columnName);
+
+        /**
+         * @throws ConfigException if the value can not be used as a timestamp
+         */
+        ResolvedDefaultValue resolveTimestamp(ColumnDefaultValue value, TimestampParser parser, String columnName);
+
+        /**
+         * @throws ConfigException if the value is not a valid JSON
+         */
+        ResolvedDefaultValue resolveJson(ColumnDefaultValue value, String columnName);
+
     }
 
     enum ValueType implements DefaultValueSetter {
         IMMEDIATE {
             @Override
-            public void longValue(ColumnDefaultValue value, PageBuilder pageBuilder, Column column) {
+            public ResolvedDefaultValue resolveLong(ColumnDefaultValue value, String columnName) {
                 try {
-                    pageBuilder.setLong(column, Long.parseLong(value.getDefaultValue().get()));
+                    return ResolvedDefaultValue.ofLong(Long.parseLong(value.getDefaultValue().get()));
                 } catch (NumberFormatException e) {
-                    throw new CsvRecordValidateException(e);
+                    throw new ConfigException(String.format("default_value '%s' of column '%s' is not a valid long", value.getDefaultValue().get(), columnName), e);
                 }
             }
 
             @Override
-            public void doubleValue(ColumnDefaultValue value, PageBuilder pageBuilder, Column column) {
+            public ResolvedDefaultValue resolveDouble(ColumnDefaultValue value, String columnName) {
                 try {
-                    pageBuilder.setDouble(column, Double.parseDouble(value.getDefaultValue().get()));
+                    return ResolvedDefaultValue.ofDouble(Double.parseDouble(value.getDefaultValue().get()));
                 } catch (NumberFormatException e) {
-                    throw new CsvRecordValidateException(e);
+                    throw new ConfigException(String.format("default_value '%s' of column '%s' is not a valid double", value.getDefaultValue().get(), columnName), e);
                 }
-
             }
 
             @Override
-            public void timestampValue(ColumnDefaultValue value, TimestampParser parser, PageBuilder pageBuilder, Column column) {
+            public ResolvedDefaultValue resolveTimestamp(ColumnDefaultValue value, TimestampParser parser, String columnName) {
                 try {
-                    pageBuilder.setTimestamp(column, parser.parse(value.getDefaultValue().get()));
+                    return ResolvedDefaultValue.ofTimestamp(parser.parse(value.getDefaultValue().get()));
                 } catch (TimestampParseException e) {
-                    throw new CsvRecordValidateException(e);
+                    throw new ConfigException(String.format("default_value '%s' of column '%s' is not a valid timestamp", value.getDefaultValue().get(), columnName), e);
+                }
+            }
+
+            @Override
+            public ResolvedDefaultValue resolveJson(ColumnDefaultValue value, String columnName) {
+                try {
+                    return ResolvedDefaultValue.ofJson(new JsonParser().parse(value.getDefaultValue().get()));
+                } catch (JsonParseException e) {
+                    throw new ConfigException(String.format("default_value '%s' of column '%s' is not a valid JSON", value.getDefaultValue().get(), columnName), e);
                 }
             }
         },
         NULL {
             @Override
-            public void longValue(ColumnDefaultValue value, PageBuilder pageBuilder, Column column) {
+            public ResolvedDefaultValue resolveLong(ColumnDefaultValue value, String columnName) {
                 throw new ConfigException("null value is not allowed for long");
             }
 
             @Override
-            public void doubleValue(ColumnDefaultValue value, PageBuilder pageBuilder, Column column) {
+            public ResolvedDefaultValue resolveDouble(ColumnDefaultValue value, String columnName) {
                 throw new ConfigException("null value is not allowed for double");
             }
 
             @Override
-            public void timestampValue(ColumnDefaultValue value, TimestampParser parser, PageBuilder pageBuilder, Column column) {
-                pageBuilder.setNull(column);
+            public ResolvedDefaultValue resolveTimestamp(ColumnDefaultValue value, TimestampParser parser, String columnName) {
+                return ResolvedDefaultValue.ofNull();
+            }
+
+            @Override
+            public ResolvedDefaultValue resolveJson(ColumnDefaultValue value, String columnName) {
+                return ResolvedDefaultValue.ofNull();
             }
         };
 
+        @Override
+        public void longValue(ColumnDefaultValue value, PageBuilder pageBuilder, Column column) {
+            resolveLong(value, column.getName()).setTo(pageBuilder, column);
+        }
+
+        @Override
+        public void doubleValue(ColumnDefaultValue value, PageBuilder pageBuilder, Column column) {
+            resolveDouble(value, column.getName()).setTo(pageBuilder, column);
+        }
+
+        @Override
+        public void timestampValue(ColumnDefaultValue value, TimestampParser parser, PageBuilder pageBuilder, Column column) {
+            resolveTimestamp(value, parser, column.getName()).setTo(pageBuilder, column);
+        }
+
         @JsonValue
         @Override
         public String toString() {
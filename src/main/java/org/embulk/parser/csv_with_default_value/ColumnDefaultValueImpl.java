@@ -2,6 +2,9 @@ package org.embulk.parser.csv_with_default_value;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
 
 public class ColumnDefaultValueImpl implements ColumnDefaultValue {
 
@@ -11,6 +14,9 @@ public class ColumnDefaultValueImpl implements ColumnDefaultValue {
     @JsonProperty("type")
     private ValueType type;
 
+    @JsonProperty("bad_tokens")
+    private List<String> badTokens;
+
     public ColumnDefaultValueImpl(){
         this(Optional.<String>absent(), ValueType.IMMEDIATE);
     }
@@ -20,8 +26,13 @@ public class ColumnDefaultValueImpl implements ColumnDefaultValue {
     }
 
     public ColumnDefaultValueImpl(Optional<String> defaultValue, ValueType type){
+        this(defaultValue, type, ImmutableList.<String>of());
+    }
+
+    public ColumnDefaultValueImpl(Optional<String> defaultValue, ValueType type, List<String> badTokens){
         this.defaultValue = defaultValue;
         this.type = type;
+        this.badTokens = badTokens;
     }
 
     @Override
@@ -34,6 +45,11 @@ public class ColumnDefaultValueImpl implements ColumnDefaultValue {
         return type;
     }
 
+    @Override
+    public List<String> getBadTokens() {
+        return badTokens;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -41,6 +57,9 @@ public class ColumnDefaultValueImpl implements ColumnDefaultValue {
 
         ColumnDefaultValue that = (ColumnDefaultValue) o;
 
+        if(!getBadTokens().equals(that.getBadTokens())){
+            return false;
+        }
         if(getDefaultValue().isPresent() != that.getDefaultValue().isPresent()){
             return false;
         }else if(getDefaultValue().isPresent() && that.getDefaultValue().isPresent()){
@@ -57,12 +76,13 @@ public class ColumnDefaultValueImpl implements ColumnDefaultValue {
     public int hashCode() {
         int result = getDefaultValue() != null ? getDefaultValue().hashCode() : 0;
         result = 31 * result + (getType() != null ? getType().hashCode() : 0);
+        result = 31 * result + getBadTokens().hashCode();
         return result;
     }
 
     @Override
     public String toString(){
-        return String.format("ColumnDefaultValueImpl(type=%s,value=%s)", getType(), getDefaultValue().or("null"));
+        return String.format("ColumnDefaultValueImpl(type=%s,value=%s,bad_tokens=%s)", getType(), getDefaultValue().or("null"), getBadTokens());
     }
 
 }
@@ -0,0 +1,76 @@
+package org.embulk.parser.csv_with_default_value;
+
+/**
+ * Reusable view of the current column of {@link CsvTokenizer}. It refers to the tokenizer's
+ * line buffer, so it is valid only until the next call to the tokenizer. Use
+ * {@link #toString()} to keep the value.
+ */
+public final class ColumnToken
+        implements CharSequence
+{
+    private CharSequence source = "";
+    private int start;
+    private int end;
+
+    ColumnToken()
+    {
+    }
+
+    void set(CharSequence source, int start, int end)
+    {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    CharSequence getSource()
+    {
+        return source;
+    }
+
+    int getStart()
+    {
+        return start;
+    }
+
+    @Override
+    public int length()
+    {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return source.subSequence(this.start + start, this.start + end);
+    }
+
+    public boolean contentEquals(String s)
+    {
+        int length = end - start;
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (source instanceof ByteLine) {
+            return ((ByteLine) source).toString(start, end);
+        }
+        return source.subSequence(start, end).toString();
+    }
+}
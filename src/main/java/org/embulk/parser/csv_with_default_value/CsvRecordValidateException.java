@@ -10,4 +10,8 @@ class CsvRecordValidateException
     CsvRecordValidateException(Throwable cause) {
         super(cause);
     }
+
+    CsvRecordValidateException(String message) {
+        super(message);
+    }
 }
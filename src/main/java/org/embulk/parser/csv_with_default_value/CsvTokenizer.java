@@ -33,19 +33,35 @@ public class CsvTokenizer
     private final boolean trimIfNotQuoted;
     private final long maxQuotedSizeLimit;
     private final String commentLineMarker;
-    private final LineDecoder input;
+    private final LineSource input;
     private final String nullStringOrNull;
+    private final long delimiterPattern;
+    private final long valueEndPattern;  // delimiter, or space if trimIfNotQuoted
+    private static final long END_OF_LINE_PATTERN = SwarScanner.pattern(END_OF_LINE);
+    private final long quotePattern;
+    private final long escapePattern;  // escape, or quote if no escape
 
     private RecordState recordState = RecordState.END;  // initial state is end of a record. nextRecord() must be called first
     private long lineNumber = 0;
 
-    private String line = null;
+    private CharSequence line = null;
     private int linePos = 0;
+    private byte[] lineBytes = null;  // bytes of line if it is a ByteLine
+    private int lineBytesOffset = 0;
     private boolean wasQuotedColumn = false;
-    private List<String> quotedValueLines = new ArrayList<>();
-    private Deque<String> unreadLines = new ArrayDeque<>();
+    private List<CharSequence> quotedValueLines = new ArrayList<>();
+    private Deque<CharSequence> unreadLines = new ArrayDeque<>();
+    // reused for each quoted value. its size is bounded by maxQuotedSizeLimit
+    private final StringBuilder quotedValue = new StringBuilder();
+    private final ColumnToken token = new ColumnToken();
+    private ParserMetrics metrics = null;  // null if metrics are disabled
 
     public CsvTokenizer(LineDecoder input, CsvWithDefaultValueParserPlugin.PluginTask task)
+    {
+        this(LineSource.of(input), task);
+    }
+
+    CsvTokenizer(LineSource input, CsvWithDefaultValueParserPlugin.PluginTask task)
     {
         String delimiter = task.getDelimiter();
         if (delimiter.length() == 0) {
@@ -65,6 +81,10 @@ public class CsvTokenizer
         maxQuotedSizeLimit = task.getMaxQuotedSizeLimit();
         commentLineMarker = task.getCommentLineMarker().orNull();
         nullStringOrNull = task.getNullString().orNull();
+        delimiterPattern = SwarScanner.pattern(delimiterChar);
+        valueEndPattern = trimIfNotQuoted ? SwarScanner.pattern(' ') : delimiterPattern;
+        quotePattern = SwarScanner.pattern(quote);
+        escapePattern = escape == NO_ESCAPE ? quotePattern : SwarScanner.pattern(escape);
         this.input = input;
     }
 
@@ -73,6 +93,17 @@ public class CsvTokenizer
         return lineNumber;
     }
 
+    // used when the lines given to this tokenizer start in the middle of a file
+    void setCurrentLineNumber(long lineNumber)
+    {
+        this.lineNumber = lineNumber;
+    }
+
+    void setMetrics(ParserMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
     public boolean skipHeaderLine()
     {
         boolean skipped = input.poll() != null;
@@ -82,25 +113,44 @@ public class CsvTokenizer
         return skipped;
     }
 
+    /**
+     * Reads the next record as the names of the columns of the current file.
+     *
+     * @return the values of the record, or null at the end of the file
+     */
+    List<String> readHeaderLine()
+    {
+        if (!nextRecord()) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        while (hasNextColumn()) {
+            names.add(nextColumn());
+        }
+        return names;
+    }
+
     // returns skipped line
     public String skipCurrentLine()
     {
-        String skippedLine;
+        CharSequence skippedLine;
         if (quotedValueLines.isEmpty()) {
             skippedLine = line;
         } else {
-            // recover lines of quoted value
-            skippedLine = quotedValueLines.remove(0);  // TODO optimize performance
-            unreadLines.addAll(quotedValueLines);
-            lineNumber -= quotedValueLines.size();
+            // recover lines of quoted value. the first line is skipped and the rest are read again
+            skippedLine = quotedValueLines.get(0);
             if (line != null) {
-                unreadLines.add(line);
+                unreadLines.addFirst(line);
                 lineNumber -= 1;
             }
+            for (int i = quotedValueLines.size() - 1; i > 0; i--) {
+                unreadLines.addFirst(quotedValueLines.get(i));
+            }
+            lineNumber -= quotedValueLines.size() - 1;
             quotedValueLines.clear();
         }
         recordState = RecordState.END;
-        return skippedLine;
+        return skippedLine == null ? null : skippedLine.toString();
     }
 
     public boolean nextFile()
@@ -147,10 +197,16 @@ public class CsvTokenizer
             }
             linePos = 0;
             lineNumber++;
+            if (line instanceof ByteLine) {
+                lineBytes = ((ByteLine) line).getBytes();
+                lineBytesOffset = ((ByteLine) line).getOffset();
+            } else {
+                lineBytes = null;
+            }
 
             boolean skip = skipEmptyLine && (
-                    line.isEmpty() ||
-                            (commentLineMarker != null && line.startsWith(commentLineMarker)));
+                    line.length() == 0 ||
+                            (commentLineMarker != null && startsWith(line, commentLineMarker)));
             if (!skip) {
                 return true;
             }
@@ -163,6 +219,81 @@ public class CsvTokenizer
     }
 
     public String nextColumn()
+    {
+        scanColumn();
+        return token.toString();
+    }
+
+    /**
+     * Returns the next column as a view over the line buffer, without creating a String.
+     * The returned object is reused and its content is valid until the next call to this tokenizer.
+     */
+    public ColumnToken nextColumnToken()
+    {
+        scanColumn();
+        return token;
+    }
+
+    /**
+     * Steps over the next column without creating a String or a token.
+     */
+    public void skipColumn()
+    {
+        scanColumn();
+    }
+
+    /**
+     * Ends the current record without tokenizing the rest of the line if the rest of the line has
+     * at least the given number of columns and no quote, which may start a multi-line quoted value.
+     *
+     * @return true if the record is ended
+     */
+    boolean skipRestOfRecord(int columns)
+    {
+        if (!hasNextColumn()) {
+            return columns == 0;
+        }
+        if (quote != NO_QUOTE && containsQuote(linePos)) {
+            return false;
+        }
+        if (columns > 1 && !hasDelimiters(linePos, columns - 1)) {
+            return false;
+        }
+        linePos = line.length();
+        recordState = RecordState.END;
+        return true;
+    }
+
+    // whether the line has the number of delimiters from the position before its end
+    private boolean hasDelimiters(int pos, int count)
+    {
+        int length = line.length();
+        int found = 0;
+        while (found < count) {
+            if (lineBytes != null) {
+                int end = lineBytesOffset + length;
+                pos = SwarScanner.indexOf(lineBytes, lineBytesOffset + pos, end, delimiterPattern, END_OF_LINE_PATTERN) - lineBytesOffset;
+            } else {
+                while (pos < length && !isDelimiter(line.charAt(pos)) && !isEndOfLine(line.charAt(pos))) {
+                    pos++;
+                }
+            }
+            if (pos >= length || isEndOfLine(line.charAt(pos))) {
+                return false;
+            }
+            pos++;
+            if (delimiterFollowingString != null) {
+                if (!isDelimiterFollowingFrom(pos)) {
+                    continue;
+                }
+                pos += delimiterFollowingString.length();
+            }
+            found++;
+        }
+        return true;
+    }
+
+    private void scanColumn()
     {
         if (!hasNextColumn()) {
             throw new TooFewColumnsException("Too few columns");
@@ -175,8 +306,8 @@ public class CsvTokenizer
         // local state
         int valueStartPos = linePos;
         int valueEndPos = 0;  // initialized by VALUE state and used by LAST_TRIM_OR_VALUE and
-        StringBuilder quotedValue = null;  // initial by VALUE or FIRST_TRIM state and used by QUOTED_VALUE state
         ColumnState columnState = ColumnState.BEGIN;
+        boolean multiLineValue = false;
 
         while (true) {
             final char c = nextChar();
@@ -188,17 +319,20 @@ public class CsvTokenizer
                     if (isDelimiter(c)) {
                         // empty value
                         if (delimiterFollowingString == null) {
-                            return "";
+                            setToken(line, linePos, linePos);
+                            return;
                         } else if (isDelimiterFollowingFrom(linePos)) {
+                            setToken(line, linePos, linePos);
                             linePos += delimiterFollowingString.length();
-                            return "";
+                            return;
                         }
                         // not a delimiter
                     }
                     if (isEndOfLine(c)) {
                         // empty value
                         recordState = RecordState.END;
-                        return "";
+                        setToken(line, linePos, linePos);
+                        return;
 
                     } else if (isSpace(c) && trimIfNotQuoted) {
                         columnState = ColumnState.FIRST_TRIM;
@@ -206,7 +340,7 @@ public class CsvTokenizer
                     } else if (isQuote(c)) {
                         valueStartPos = linePos;  // == 1
                         wasQuotedColumn = true;
-                        quotedValue = new StringBuilder();
+                        quotedValue.setLength(0);
                         columnState = ColumnState.QUOTED_VALUE;
 
                     } else {
@@ -218,23 +352,26 @@ public class CsvTokenizer
                     if (isDelimiter(c)) {
                         // empty value
                         if (delimiterFollowingString == null) {
-                            return "";
+                            setToken(line, linePos, linePos);
+                            return;
                         } else if (isDelimiterFollowingFrom(linePos)) {
+                            setToken(line, linePos, linePos);
                             linePos += delimiterFollowingString.length();
-                            return "";
+                            return;
                         }
                         // not a delimiter
                     }
                     if (isEndOfLine(c)) {
                         // empty value
                         recordState = RecordState.END;
-                        return "";
+                        setToken(line, linePos, linePos);
+                        return;
 
                     } else if (isQuote(c)) {
                         // column has heading spaces and quoted. TODO should this be rejected?
                         valueStartPos = linePos;
                         wasQuotedColumn = true;
-                        quotedValue = new StringBuilder();
+                        quotedValue.setLength(0);
                         columnState = ColumnState.QUOTED_VALUE;
 
                     } else if (isSpace(c)) {
@@ -249,17 +386,19 @@ public class CsvTokenizer
                 case VALUE:
                     if (isDelimiter(c)) {
                         if (delimiterFollowingString == null) {
-                            return line.substring(valueStartPos, linePos - 1);
+                            setToken(line, valueStartPos, linePos - 1);
+                            return;
                         } else if (isDelimiterFollowingFrom(linePos)) {
-                            String value = line.substring(valueStartPos, linePos - 1);
+                            setToken(line, valueStartPos, linePos - 1);
                             linePos += delimiterFollowingString.length();
-                            return value;
+                            return;
                         }
                         // not a delimiter
                     }
                     if (isEndOfLine(c)) {
                         recordState = RecordState.END;
-                        return line.substring(valueStartPos, linePos);
+                        setToken(line, valueStartPos, linePos);
+                        return;
 
                     } else if (isSpace(c) && trimIfNotQuoted) {
                         valueEndPos = linePos - 1;  // this is possibly end of value
@@ -273,23 +412,29 @@ public class CsvTokenizer
 
                     } else {
                         // keep VALUE state
+                        if (lineBytes != null) {
+                            linePos = skipValueBytes(linePos);
+                        }
                     }
                     break;
 
                 case LAST_TRIM_OR_VALUE:
                     if (isDelimiter(c)) {
                         if (delimiterFollowingString == null) {
-                            return line.substring(valueStartPos, valueEndPos);
+                            setToken(line, valueStartPos, valueEndPos);
+                            return;
                         } else if (isDelimiterFollowingFrom(linePos)) {
                             linePos += delimiterFollowingString.length();
-                            return line.substring(valueStartPos, valueEndPos);
+                            setToken(line, valueStartPos, valueEndPos);
+                            return;
                         } else {
                             // not a delimiter
                         }
                     }
                     if (isEndOfLine(c)) {
                         recordState = RecordState.END;
-                        return line.substring(valueStartPos, valueEndPos);
+                        setToken(line, valueStartPos, valueEndPos);
+                        return;
 
                     } else if (isSpace(c)) {
                         // keep LAST_TRIM_OR_VALUE state
@@ -303,7 +448,13 @@ public class CsvTokenizer
                 case QUOTED_VALUE:
                     if (isEndOfLine(c)) {
                         // multi-line quoted value
-                        quotedValue.append(line.substring(valueStartPos, linePos));
+                        if (!multiLineValue) {
+                            multiLineValue = true;
+                            if (metrics != null) {
+                                metrics.multiLineValue();
+                            }
+                        }
+                        appendLine(quotedValue, valueStartPos, linePos);
                         quotedValue.append(newline);
                         quotedValueLines.add(line);
                         if (!nextLine(false)) {
@@ -314,10 +465,10 @@ public class CsvTokenizer
                     } else if (isQuote(c)) {
                         char next = peekNextChar();
                         if (isQuote(next)) { // escaped quote
-                            quotedValue.append(line.substring(valueStartPos, linePos));
+                            appendLine(quotedValue, valueStartPos, linePos);
                             valueStartPos = ++linePos;
                         } else {
-                            quotedValue.append(line.substring(valueStartPos, linePos - 1));
+                            appendLine(quotedValue, valueStartPos, linePos - 1);
                             columnState = ColumnState.AFTER_QUOTED_VALUE;
                         }
 
@@ -326,39 +477,44 @@ public class CsvTokenizer
                         char next = peekNextChar();
                         if (isEndOfLine(c)) {
                             // escape end of line. TODO assuming multi-line quoted value without newline?
-                            quotedValue.append(line.substring(valueStartPos, linePos));
+                            appendLine(quotedValue, valueStartPos, linePos);
                             quotedValueLines.add(line);
                             if (!nextLine(false)) {
                                 throw new InvalidValueException("Unexpected end of line during parsing a quoted value");
                             }
                             valueStartPos = 0;
                         } else if (isQuote(next) || isEscape(next)) { // escaped quote
-                            quotedValue.append(line.substring(valueStartPos, linePos - 1));
+                            appendLine(quotedValue, valueStartPos, linePos - 1);
                             quotedValue.append(next);
                             valueStartPos = ++linePos;
                         }
 
                     } else {
+                        // keep QUOTED_VALUE state until the next quote, escape or end of line,
+                        // and check the size once for these characters
+                        linePos = skipQuotedValueChars(linePos);
                         if ((linePos - valueStartPos) + quotedValue.length() > maxQuotedSizeLimit) {
                             throw new QuotedSizeLimitExceededException("The size of the quoted value exceeds the limit size ("+maxQuotedSizeLimit+")");
                         }
-                        // keep QUOTED_VALUE state
                     }
                     break;
 
                 case AFTER_QUOTED_VALUE:
                     if (isDelimiter(c)) {
                         if (delimiterFollowingString == null) {
-                            return quotedValue.toString();
+                            setToken(quotedValue, 0, quotedValue.length());
+                            return;
                         } else if (isDelimiterFollowingFrom(linePos)) {
                             linePos += delimiterFollowingString.length();
-                            return quotedValue.toString();
+                            setToken(quotedValue, 0, quotedValue.length());
+                            return;
                         }
                         // not a delimiter
                     }
                     if (isEndOfLine(c)) {
                         recordState = RecordState.END;
-                        return quotedValue.toString();
+                        setToken(quotedValue, 0, quotedValue.length());
+                        return;
 
                     } else if (isSpace(c)) {
                         // column has trailing spaces and quoted. TODO should this be rejected?
@@ -376,11 +532,20 @@ public class CsvTokenizer
 
     public String nextColumnOrNull()
     {
-        String v = nextColumn();
+        ColumnToken v = nextColumnTokenOrNull();
+        return v == null ? null : v.toString();
+    }
+
+    /**
+     * Same as {@link #nextColumnOrNull()} but returns a reused view like {@link #nextColumnToken()}.
+     */
+    public ColumnToken nextColumnTokenOrNull()
+    {
+        ColumnToken v = nextColumnToken();
         if (nullStringOrNull == null) {
-            if (v.isEmpty()) {
+            if (v.length() == 0) {
                 if (wasQuotedColumn) {
-                    return "";
+                    return v;
                 }
                 else {
                     return null;
@@ -391,7 +556,7 @@ public class CsvTokenizer
             }
         }
         else {
-            if (v.equals(nullStringOrNull)) {
+            if (v.contentEquals(nullStringOrNull)) {
                 return null;
             }
             else {
@@ -400,6 +565,73 @@ public class CsvTokenizer
         }
     }
 
+    // returns the position of the next byte that can end an unquoted value, or the end of the line.
+    // A NUL byte ends the line as nextChar() returns END_OF_LINE for it.
+    private int skipValueBytes(int pos)
+    {
+        int end = lineBytesOffset + line.length();
+        return SwarScanner.indexOf(lineBytes, lineBytesOffset + pos, end, delimiterPattern, valueEndPattern, END_OF_LINE_PATTERN) - lineBytesOffset;
+    }
+
+    private boolean containsQuote(int pos)
+    {
+        if (lineBytes != null) {
+            int end = lineBytesOffset + line.length();
+            return SwarScanner.indexOf(lineBytes, lineBytesOffset + pos, end, quotePattern, quotePattern) < end;
+        }
+        for (int i = pos; i < line.length(); i++) {
+            if (line.charAt(i) == quote) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // returns the position of the next quote, escape or NUL character, or the end of the line
+    private int skipQuotedValueChars(int pos)
+    {
+        if (lineBytes != null) {
+            int end = lineBytesOffset + line.length();
+            return SwarScanner.indexOf(lineBytes, lineBytesOffset + pos, end, quotePattern, escapePattern, END_OF_LINE_PATTERN) - lineBytesOffset;
+        }
+        int length = line.length();
+        while (pos < length) {
+            char c = line.charAt(pos);
+            if (isQuote(c) || isEscape(c) || isEndOfLine(c)) {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private void appendLine(StringBuilder sb, int start, int end)
+    {
+        if (line instanceof ByteLine) {
+            ((ByteLine) line).appendTo(sb, start, end);
+        } else {
+            sb.append(line, start, end);
+        }
+    }
+
+    private static boolean startsWith(CharSequence s, String prefix)
+    {
+        if (s.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (s.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setToken(CharSequence source, int start, int end)
+    {
+        token.set(source, start, end);
+    }
+
     public boolean wasQuotedColumn()
     {
         return wasQuotedColumn;
@@ -1,7 +1,6 @@
 package org.embulk.parser.csv_with_default_value;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableSet;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonValue;
@@ -13,26 +12,15 @@ import org.embulk.config.ConfigException;
 import org.embulk.config.TaskSource;
 import org.embulk.spi.*;
 import org.embulk.spi.time.TimestampParser;
-import org.embulk.spi.time.TimestampParseException;
-import org.embulk.spi.json.JsonParser;
-import org.embulk.spi.json.JsonParseException;
 import org.embulk.spi.util.LineDecoder;
-import org.embulk.spi.util.Timestamps;
 import org.slf4j.Logger;
 
+import java.util.List;
 import java.util.Map;
 
 public class CsvWithDefaultValueParserPlugin
         implements ParserPlugin
 {
-    private static final ImmutableSet<String> TRUE_STRINGS =
-            ImmutableSet.of(
-                    "true", "True", "TRUE",
-                    "yes", "Yes", "YES",
-                    "t", "T", "y", "Y",
-                    "on", "On", "ON",
-                    "1");
-
     public interface PluginTask
             extends Task, LineDecoder.DecoderTask, TimestampParser.Task
     {
@@ -48,6 +36,12 @@ public class CsvWithDefaultValueParserPlugin
         int getSkipHeaderLines();
         void setSkipHeaderLines(int n);
 
+        // Reads the first record of each file as the names of its columns, and maps
+        // the values to columns by these names instead of by their positions.
+        @Config("header_mapping")
+        @ConfigDefault("false")
+        boolean getHeaderMapping();
+
         @Config("delimiter")
         @ConfigDefault("\",\"")
         String getDelimiter();
@@ -94,6 +88,85 @@ public class CsvWithDefaultValueParserPlugin
         @ConfigDefault("{}")
         Map<String, ColumnDefaultValue> getDefaultValues();
 
+        // Applied default values are logged for up to this many values per column
+        // and skipped lines for up to this many lines. The rest are only counted.
+        @Config("max_logged_samples")
+        @ConfigDefault("10")
+        int getMaxLoggedSamples();
+
+        // Number of distinct values of each timestamp column whose parsed results are
+        // cached. 0 disables the cache. Can be overridden by each column's option.
+        @Config("timestamp_cache_size")
+        @ConfigDefault("0")
+        int getTimestampCacheSize();
+
+        // Number of distinct values of each string column that share one String instance
+        // among equal values, up to intern_cache_max_bytes bytes per column. 0 disables the
+        // cache. Both can be overridden by each column's option.
+        @Config("intern_cache_size")
+        @ConfigDefault("0")
+        int getInternCacheSize();
+
+        @Config("intern_cache_max_bytes")
+        @ConfigDefault("1048576") //1MB
+        long getInternCacheMaxBytes();
+
+        @Config("true_strings")
+        @ConfigDefault("[\"true\", \"True\", \"TRUE\", \"yes\", \"Yes\", \"YES\", \"t\", \"T\", \"y\", \"Y\", \"on\", \"On\", \"ON\", \"1\"]")
+        List<String> getTrueStrings();
+
+        // If set, boolean values that are in neither true_strings nor false_strings are invalid.
+        // Otherwise, all values that are not in true_strings are false.
+        @Config("false_strings")
+        @ConfigDefault("null")
+        Optional<List<String>> getFalseStrings();
+
+        // Scans the input as bytes instead of decoding every line if charset is UTF-8, US-ASCII or
+        // ISO-8859-1 and all characters in the options above are ASCII. Otherwise ignored.
+        // Disabled by default until it is proven to give the same output as the line decoder.
+        @Config("byte_level_tokenizer")
+        @ConfigDefault("false")
+        boolean getByteLevelTokenizer();
+
+        // Number of threads that tokenize and convert chunks of each file in parallel.
+        // 1 parses files serially in the task thread.
+        @Config("parser_threads")
+        @ConfigDefault("1")
+        int getParserThreads();
+
+        // Reads and decodes lines in another thread while the task thread tokenizes and converts them.
+        @Config("pipelined")
+        @ConfigDefault("false")
+        boolean getPipelined();
+
+        // Counts bytes, lines, records and multi-line values, and samples conversion times.
+        // They are exposed as a JMX MBean while the task runs and logged at the end of the task.
+        @Config("metrics")
+        @ConfigDefault("false")
+        boolean getMetrics();
+
+        // Skipped lines are written to "<rejects_path>.<n>.csv" (or .jsonl) by a background thread of each task.
+        @Config("rejects_path")
+        @ConfigDefault("null")
+        Optional<String> getRejectsPath();
+
+        @Config("rejects_format")
+        @ConfigDefault("\"csv\"")
+        RejectsFormat getRejectsFormat();
+
+        // Minimum capacity of the pages built by each task in bytes. The Exec allocator rounds it
+        // up from its own page size, so it only makes pages larger. 0 uses the page size of the
+        // Exec allocator. Wide schemas fit more records in a larger page.
+        @Config("page_size")
+        @ConfigDefault("0")
+        int getPageSize();
+
+        // Number of pages released by the downstream plugins that each task keeps and reuses
+        // instead of allocating new ones. 0 disables the pool.
+        @Config("page_pool_size")
+        @ConfigDefault("0")
+        int getPagePoolSize();
+
     }
 
     public static class QuoteCharacter
@@ -196,6 +269,36 @@ public class CsvWithDefaultValueParserPlugin
         }
     }
 
+    public enum RejectsFormat
+    {
+        CSV("csv"),
+        JSONL("jsonl");
+
+        private final String extension;
+
+        RejectsFormat(String extension)
+        {
+            this.extension = extension;
+        }
+
+        @JsonCreator
+        public static RejectsFormat ofString(String str)
+        {
+            for (RejectsFormat format : values()) {
+                if (format.extension.equals(str)) {
+                    return format;
+                }
+            }
+            throw new ConfigException(String.format("\"rejects_format\" must be \"csv\" or \"jsonl\" but got \"%s\"", str));
+        }
+
+        @JsonValue
+        public String getExtension()
+        {
+            return extension;
+        }
+    }
+
     private final Logger log;
 
     public CsvWithDefaultValueParserPlugin()
@@ -220,7 +323,20 @@ public class CsvWithDefaultValueParserPlugin
             }
         }
 
-        control.run(task.dump(), task.getSchemaConfig().toSchema());
+        if (task.getHeaderMapping() && task.getSkipHeaderLines() > 0) {
+            throw new ConfigException("'header_mapping' option reads the header line of each file, so 'skip_header_lines' and 'header_line' must not be set.");
+        }
+
+        if (task.getPageSize() < 0) {
+            throw new ConfigException("'page_size' must not be negative.");
+        }
+        if (task.getPagePoolSize() < 0) {
+            throw new ConfigException("'page_pool_size' must not be negative.");
+        }
+
+        ColumnConversionPlan.validate(task);
+
+        control.run(task.dump(), ColumnConversionPlan.outputSchema(task.getSchemaConfig()));
     }
 
     @Override
@@ -228,15 +344,39 @@ public class CsvWithDefaultValueParserPlugin
                     FileInput input, PageOutput output)
     {
         PluginTask task = taskSource.loadTask(PluginTask.class);
-        final TimestampParser[] timestampParsers = Timestamps.newTimestampColumnParsers(task, task.getSchemaConfig());
-        final JsonParser jsonParser = new JsonParser();
-        final CsvTokenizer tokenizer = new CsvTokenizer(new LineDecoder(input, task), task);
-        final boolean allowOptionalColumns = task.getAllowOptionalColumns();
-        final boolean allowExtraColumns = task.getAllowExtraColumns();
-        final boolean stopOnInvalidRecord = task.getStopOnInvalidRecord();
+        try (TaskMetrics metrics = task.getMetrics() ? TaskMetrics.start(schema, log) : null;
+                RejectWriter rejects = task.getRejectsPath().isPresent() ? RejectWriter.open(task.getRejectsPath().get(), task.getRejectsFormat()) : null;
+                PooledPageAllocator pagePool = task.getPageSize() > 0 || task.getPagePoolSize() > 0 ?
+                        new PooledPageAllocator(Exec.getBufferAllocator(), task.getPageSize(), task.getPagePoolSize(), log) : null) {
+            BufferAllocator allocator = pagePool != null ? pagePool : Exec.getBufferAllocator();
+            if (metrics != null) {
+                metrics.setPagePool(pagePool);
+            }
+            if (task.getParserThreads() > 1) {
+                new ParallelChunkParser(task, schema, metrics, rejects).run(input, output, allocator);
+            } else {
+                run(task, schema, input, output, allocator, metrics, rejects);
+            }
+            if (metrics != null) {
+                metrics.logSummary();
+            }
+        }
+    }
+
+    private void run(PluginTask task, Schema schema, FileInput input, PageOutput output, BufferAllocator allocator, TaskMetrics metrics, RejectWriter rejects)
+    {
+        final ColumnConversionPlan plan = ColumnConversionPlan.compile(task, schema);
+        plan.getReport().setRejectWriter(rejects);
+        if (metrics != null) {
+            metrics.add(plan);
+        }
         int skipHeaderLines = task.getSkipHeaderLines();
+        int fileIndex = -1;
 
-        try (final PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), schema, output)) {
+        try (final LineSource lineSource = LineSource.of(input, task, metrics);
+                final PageBuilder pageBuilder = new PageBuilder(allocator, schema, output)) {
+            final CsvTokenizer tokenizer = new CsvTokenizer(lineSource, task);
+            tokenizer.setMetrics(plan.getMetrics());
             while (tokenizer.nextFile()) {
                 // skip the header lines for each file
                 for (; skipHeaderLines > 0; skipHeaderLines--) {
@@ -245,203 +385,80 @@ public class CsvWithDefaultValueParserPlugin
                     }
                 }
 
-                if (!tokenizer.nextRecord()) {
-                    // empty file
-                    continue;
-                }
-
-                while (true) {
-                    boolean hasNextRecord;
-
-                    try {
-                        schema.visitColumns(new DefaultValueAwareColumnVisitor(pageBuilder, task, tokenizer, timestampParsers));
-
-                        try {
-                            hasNextRecord = tokenizer.nextRecord();
-                        } catch (CsvTokenizer.TooManyColumnsException ex) {
-                            if (allowExtraColumns) {
-                                String tooManyColumnsLine = tokenizer.skipCurrentLine();
-                                // TODO warning
-                                hasNextRecord = tokenizer.nextRecord();
-                            } else {
-                                // this line will be skipped at the following catch section
-                                throw ex;
-                            }
-                        }
-                        pageBuilder.addRecord();
-
-                    } catch (CsvTokenizer.InvalidFormatException | CsvTokenizer.InvalidValueException | CsvRecordValidateException e) {
-                        String skippedLine = tokenizer.skipCurrentLine();
-                        long lineNumber = tokenizer.getCurrentLineNumber();
-                        if (stopOnInvalidRecord) {
-                            throw new DataException(String.format("Invalid record at line %d: %s", lineNumber, skippedLine), e);
-                        }
-                        log.warn(String.format("Skipped line %d (%s): %s", lineNumber, e.getMessage(), skippedLine));
-                        //exec.notice().skippedLine(skippedLine);
+                fileIndex++;
 
-                        hasNextRecord = tokenizer.nextRecord();
-                    }
-
-                    if (!hasNextRecord) {
-                        break;
+                if (task.getHeaderMapping()) {
+                    List<String> header = tokenizer.readHeaderLine();
+                    if (header == null) {
+                        // empty file
+                        continue;
                     }
+                    plan.mapHeader(header);
                 }
+
+                parseRecords(task, tokenizer, plan, pageBuilder, fileIndex);
             }
 
             pageBuilder.finish();
         }
 
-    }
+        plan.getReport().logSummary();
 
-    static class DefaultValueAwareColumnVisitor implements ColumnVisitor {
-
-        private final PageBuilder pageBuilder;
-        private final PluginTask task;
-        private final TimestampParser[] timestampParsers;
-        private final JsonParser jsonParser;
-        private final boolean allowOptionalColumns;
-        private final CsvTokenizer tokenizer;
-        private final Logger log = Exec.getLogger(CsvWithDefaultValueParserPlugin.class);
-
-        DefaultValueAwareColumnVisitor(PageBuilder pageBuilder, PluginTask task, CsvTokenizer tokenizer, TimestampParser[] timestampParsers) {
-            this.pageBuilder = pageBuilder;
-            this.timestampParsers = timestampParsers;
-            this.jsonParser = new JsonParser();
-            this.tokenizer = tokenizer;
-            this.allowOptionalColumns = task.getAllowOptionalColumns();
-            this.task = task;
-            assertDefaultValuesAreAllowedForTypes();
-        }
+    }
 
-        private void assertDefaultValuesAreAllowedForTypes(){
-            for(Map.Entry<String, ColumnDefaultValue> e: task.getDefaultValues().entrySet()){
-                ColumnConfig col = task.getSchemaConfig().lookupColumn(e.getKey());
-                if(col == null){
-                    throw new ConfigException(String.format("column %s is not found.", e.getKey()));
-                }else if(!ColumnDefaultValue.ALLOWED_TYPES.contains(col.getType())){
-                    throw new ConfigException(String.format("default value are allowed for only %s", ColumnDefaultValue.ALLOWED_TYPES_NAME));
-                }
-            }
-        }
+    // parses the rest of the current file, which is the fileIndex-th file of the task
+    static void parseRecords(PluginTask task, CsvTokenizer tokenizer, ColumnConversionPlan plan, PageBuilder pageBuilder, int fileIndex)
+    {
+        final boolean allowExtraColumns = task.getAllowExtraColumns();
+        final boolean stopOnInvalidRecord = task.getStopOnInvalidRecord();
+        final ParserMetrics metrics = plan.getMetrics();
 
-        public void booleanColumn(Column column)
-        {
-            String v = nextColumn();
-            if (v == null) {
-                pageBuilder.setNull(column);
-            } else {
-                pageBuilder.setBoolean(column, TRUE_STRINGS.contains(v));
-            }
+        if (!tokenizer.nextRecord()) {
+            // empty file
+            return;
         }
 
-        public void longColumn(Column column)
-        {
-            String v = nextColumn();
-            if (v == null) {
-                pageBuilder.setNull(column);
-            } else {
-                try {
-                    pageBuilder.setLong(column, Long.parseLong(v));
-                } catch (NumberFormatException e) {
-                    final Optional<ColumnDefaultValue> defaultValue = getDefaultValue(task, column);
-                    if(defaultValue.isPresent()){
-                        defaultValue.get().getType().longValue(defaultValue.get(), pageBuilder, column);
-                        log.warn(String.format("Applying default value due to fail to parse: %s(%s)", v, column.getName()));
-                    }else {
-                        throw new CsvRecordValidateException(e);
-                    }
+        while (true) {
+            boolean hasNextRecord;
 
-                }
-            }
-        }
+            try {
+                plan.convertRecord(tokenizer, pageBuilder);
 
-        public void doubleColumn(Column column)
-        {
-            String v = nextColumn();
-            if (v == null) {
-                pageBuilder.setNull(column);
-            } else {
-                try {
-                    pageBuilder.setDouble(column, Double.parseDouble(v));
-                } catch (NumberFormatException e) {
-                    final Optional<ColumnDefaultValue> defaultValue = getDefaultValue(task, column);
-                    if(defaultValue.isPresent()){
-                        defaultValue.get().getType().doubleValue(defaultValue.get(), pageBuilder, column);
-                        log.warn(String.format("Applying default value due to fail to parse: %s(%s)", v, column.getName()));
-                    }else {
-                        throw new CsvRecordValidateException(e);
-                    }                                    }
-            }
-        }
-
-        public void stringColumn(Column column)
-        {
-            String v = nextColumn();
-            if (v == null) {
-                pageBuilder.setNull(column);
-            } else {
-                pageBuilder.setString(column, v);
-            }
-        }
-
-        public void timestampColumn(Column column)
-        {
-            String v = nextColumn();
-            if (v == null) {
-                pageBuilder.setNull(column);
-            } else {
                 try {
-                    pageBuilder.setTimestamp(column, timestampParsers[column.getIndex()].parse(v));
-                } catch (TimestampParseException e) {
-                    final Optional<ColumnDefaultValue> defaultValue = getDefaultValue(task, column);
-                    if(defaultValue.isPresent()){
-                        defaultValue.get().getType().timestampValue(defaultValue.get(), timestampParsers[column.getIndex()], pageBuilder, column);
-                        log.warn(String.format("Applying default value due to fail to parse: %s(%s)", v, column.getName()));
-                    }else{
-                        throw new CsvRecordValidateException(e);
+                    hasNextRecord = tokenizer.nextRecord();
+                } catch (CsvTokenizer.TooManyColumnsException ex) {
+                    if (allowExtraColumns) {
+                        String tooManyColumnsLine = tokenizer.skipCurrentLine();
+                        // TODO warning
+                        hasNextRecord = tokenizer.nextRecord();
+                    } else {
+                        // this line will be skipped at the following catch section
+                        throw ex;
                     }
-
                 }
-            }
-        }
+                pageBuilder.addRecord();
+                if (metrics != null) {
+                    metrics.recordEmitted();
+                }
 
-        public void jsonColumn(Column column)
-        {
-            String v = nextColumn();
-            if (v == null) {
-                pageBuilder.setNull(column);
-            } else {
-                try {
-                    pageBuilder.setJson(column, jsonParser.parse(v));
-                } catch (JsonParseException e) {
-                    // TODO support default value
-                    throw new CsvRecordValidateException(e);
+            } catch (CsvTokenizer.InvalidFormatException | CsvTokenizer.InvalidValueException | CsvRecordValidateException e) {
+                String skippedLine = tokenizer.skipCurrentLine();
+                long lineNumber = tokenizer.getCurrentLineNumber();
+                if (stopOnInvalidRecord) {
+                    throw new DataException(String.format("Invalid record at line %d: %s", lineNumber, skippedLine), e);
                 }
-            }
-        }
+                plan.getReport().lineSkipped(fileIndex, lineNumber, skippedLine, e);
+                if (metrics != null) {
+                    metrics.recordSkipped(e);
+                }
+                //exec.notice().skippedLine(skippedLine);
 
-        private String nextColumn()
-        {
-            if (allowOptionalColumns && !tokenizer.hasNextColumn()) {
-                //TODO warning
-                return null;
+                hasNextRecord = tokenizer.nextRecord();
             }
-            return tokenizer.nextColumnOrNull();
-        }
 
-        protected Optional<ColumnDefaultValue> getDefaultValue(final PluginTask task, final Column column){
-            final ColumnDefaultValue value = task.getDefaultValues().get(column.getName());
-            if(value == null){
-                return Optional.absent();
-            }
-            //Check values is set if immediate
-            if(value.getType() == ColumnDefaultValue.ValueType.IMMEDIATE && !value.getDefaultValue().isPresent()){
-                throw new ConfigException(String.format("default_value is not set to column '%s'", column.getName()));
-            }else if(value.getType() == ColumnDefaultValue.ValueType.NULL && value.getDefaultValue().isPresent()){
-                throw new ConfigException(String.format("default_value is set to column '%s', even though type is null.", column.getName()));
+            if (!hasNextRecord) {
+                break;
             }
-            return Optional.of(value);
         }
-
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.slf4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-task counters of applied default values, bad tokens, null values and skipped records.
+ * Only the first {@code max_logged_samples} occurrences are logged one by one
+ * (per column for default values); the totals are logged once by {@link #logSummary()}.
+ * Reports of parser threads share the numbers of logged samples by {@link #shareSamplesWith}.
+ * All skipped lines are written to the {@link RejectWriter} if {@code rejects_path} is set.
+ */
+class DirtyDataReport
+{
+    private final Logger log;
+    private final int maxLoggedSamples;
+    private final String[] columnNames;
+    private final long[] defaultsApplied;
+    private final long[] badTokens;  // replaced with default values without being logged
+    private final long[] nulls;
+    private final long[] rejected;
+    private final long[] validationRejected;  // invalid values found by AdaptiveParseStrategy without parsing
+    private final long[] strategySwitches;
+    private long skippedLines;
+    private RejectWriter rejects = null;
+    // numbers of logged samples, which may be shared with other reports
+    private AtomicLongArray loggedDefaults;
+    private AtomicLong loggedSkippedLines = new AtomicLong();
+
+    DirtyDataReport(Schema schema, int maxLoggedSamples, Logger log)
+    {
+        int columnCount = schema.getColumnCount();
+        this.log = log;
+        this.maxLoggedSamples = maxLoggedSamples;
+        this.columnNames = new String[columnCount];
+        for (Column column : schema.getColumns()) {
+            columnNames[column.getIndex()] = column.getName();
+        }
+        this.defaultsApplied = new long[columnCount];
+        this.badTokens = new long[columnCount];
+        this.nulls = new long[columnCount];
+        this.rejected = new long[columnCount];
+        this.validationRejected = new long[columnCount];
+        this.strategySwitches = new long[columnCount];
+        this.loggedDefaults = new AtomicLongArray(columnCount);
+    }
+
+    void setRejectWriter(RejectWriter rejects)
+    {
+        this.rejects = rejects;
+    }
+
+    /**
+     * Logs up to {@code max_logged_samples} samples in total with {@code other}, which may be
+     * used by another thread.
+     */
+    void shareSamplesWith(DirtyDataReport other)
+    {
+        this.loggedDefaults = other.loggedDefaults;
+        this.loggedSkippedLines = other.loggedSkippedLines;
+    }
+
+    void defaultApplied(Column column, CharSequence value)
+    {
+        defaultsApplied[column.getIndex()]++;
+        // the shared count is not updated any more once it reaches the limit
+        if (loggedDefaults.get(column.getIndex()) >= maxLoggedSamples) {
+            return;
+        }
+        long count = loggedDefaults.incrementAndGet(column.getIndex());
+        if (count <= maxLoggedSamples) {
+            log.warn(String.format("Applying default value due to fail to parse: %s(%s)", value, column.getName()));
+            if (count == maxLoggedSamples) {
+                log.warn(String.format("Further default values applied to column '%s' are counted but not logged", column.getName()));
+            }
+        }
+    }
+
+    void badTokenReplaced(Column column)
+    {
+        badTokens[column.getIndex()]++;
+    }
+
+    void nullValue(Column column)
+    {
+        nulls[column.getIndex()]++;
+    }
+
+    void recordRejected(Column column)
+    {
+        rejected[column.getIndex()]++;
+    }
+
+    void validationRejected(Column column)
+    {
+        validationRejected[column.getIndex()]++;
+    }
+
+    void strategySwitched(Column column, boolean validateFirst)
+    {
+        strategySwitches[column.getIndex()]++;
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Column '%s' is %s", column.getName(), validateFirst ? "validated before parsing" : "parsed optimistically"));
+        }
+    }
+
+    void lineSkipped(int fileIndex, long lineNumber, String line, Exception cause)
+    {
+        if (rejects != null) {
+            rejects.add(fileIndex, lineNumber, line, cause);
+        }
+        skippedLines++;
+        if (loggedSkippedLines.get() >= maxLoggedSamples) {
+            return;
+        }
+        long count = loggedSkippedLines.incrementAndGet();
+        if (count <= maxLoggedSamples) {
+            log.warn(String.format("Skipped line %d (%s): %s", lineNumber, cause.getMessage(), line));
+            if (count == maxLoggedSamples) {
+                log.warn("Further skipped lines are counted but not logged");
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of another report of the same schema, e.g. of a parser thread.
+     */
+    void add(DirtyDataReport other)
+    {
+        for (int i = 0; i < columnNames.length; i++) {
+            defaultsApplied[i] += other.defaultsApplied[i];
+            badTokens[i] += other.badTokens[i];
+            nulls[i] += other.nulls[i];
+            rejected[i] += other.rejected[i];
+            validationRejected[i] += other.validationRejected[i];
+            strategySwitches[i] += other.strategySwitches[i];
+        }
+        skippedLines += other.skippedLines;
+    }
+
+    long getDefaultsApplied(int columnIndex)
+    {
+        return defaultsApplied[columnIndex];
+    }
+
+    long getBadTokens(int columnIndex)
+    {
+        return badTokens[columnIndex];
+    }
+
+    long getNulls(int columnIndex)
+    {
+        return nulls[columnIndex];
+    }
+
+    long getRejected(int columnIndex)
+    {
+        return rejected[columnIndex];
+    }
+
+    long getValidationRejected(int columnIndex)
+    {
+        return validationRejected[columnIndex];
+    }
+
+    long getStrategySwitches(int columnIndex)
+    {
+        return strategySwitches[columnIndex];
+    }
+
+    long getSkippedLines()
+    {
+        return skippedLines;
+    }
+
+    void logSummary()
+    {
+        boolean dirty = skippedLines > 0;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columnNames.length; i++) {
+            if (defaultsApplied[i] == 0 && badTokens[i] == 0 && nulls[i] == 0 && rejected[i] == 0) {
+                continue;
+            }
+            // bad tokens are expected by the configuration, so they are not dirty
+            dirty |= defaultsApplied[i] > 0 || rejected[i] > 0;
+            sb.append(String.format("%n  %s: defaults applied=%d, bad tokens=%d, nulls=%d, rejected records=%d",
+                        columnNames[i], defaultsApplied[i], badTokens[i], nulls[i], rejected[i]));
+            if (strategySwitches[i] > 0) {
+                sb.append(String.format(", rejected by validation before parsing=%d, strategy switches=%d",
+                            validationRejected[i], strategySwitches[i]));
+            }
+        }
+        String message = String.format("csv_with_default_value: skipped lines=%d%s", skippedLines, sb);
+        if (dirty) {
+            log.warn(message);
+        } else {
+            log.info(message);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.time.Timestamp;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for a subset of strptime formats that reads digits at fixed positions and
+ * computes the epoch seconds directly, without a round trip through JRuby.
+ *
+ * Supported directives are %Y (4 digits), %m, %d, %H, %M, %S (2 digits), %N and %L
+ * (1 to 9 digits of fraction), %z (+HHMM or +HH:MM) and %%. Everything else in the
+ * format is matched literally. {@link #compile(String, DateTimeZone)} returns null
+ * for other formats, and {@link #parse(CharSequence)} returns null for input that
+ * is not in this exact shape, so that callers fall back to {@code TimestampParser}.
+ *
+ * Results are the same as TimestampParser of Embulk 0.8: the fraction is truncated
+ * to microseconds and the default time zone is applied with
+ * {@link DateTimeZone#convertLocalToUTC(long, boolean)}.
+ */
+final class FastTimestampParser
+{
+    private static final int LITERAL = 0;
+    private static final int YEAR = 1;
+    private static final int MONTH = 2;
+    private static final int DAY = 3;
+    private static final int HOUR = 4;
+    private static final int MINUTE = 5;
+    private static final int SECOND = 6;
+    private static final int FRACTION = 7;
+    private static final int ZONE = 8;
+
+    private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    private final int[] kinds;
+    private final char[] literals;
+    private final DateTimeZone defaultTimeZone;
+    private final boolean fixedDefaultTimeZone;
+    private final long defaultOffsetMillis;
+
+    private FastTimestampParser(int[] kinds, char[] literals, DateTimeZone defaultTimeZone)
+    {
+        this.kinds = kinds;
+        this.literals = literals;
+        this.defaultTimeZone = defaultTimeZone;
+        this.fixedDefaultTimeZone = defaultTimeZone.isFixed();
+        this.defaultOffsetMillis = defaultTimeZone.getOffset(0L);
+    }
+
+    /**
+     * @return the parser, or null if the format can not be handled by this class
+     */
+    static FastTimestampParser compile(String format, DateTimeZone defaultTimeZone)
+    {
+        List<Integer> kinds = new ArrayList<>();
+        StringBuilder literals = new StringBuilder();
+        boolean[] seen = new boolean[ZONE + 1];
+
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c != '%') {
+                // whitespace in strptime formats matches any amount of whitespace. Matching
+                // exactly the same character is a subset of it; the rest is left to the fallback.
+                kinds.add(LITERAL);
+                literals.append(c);
+                continue;
+            }
+
+            if (++i >= format.length()) {
+                return null;
+            }
+            int kind;
+            switch (format.charAt(i)) {
+            case 'Y': kind = YEAR; break;
+            case 'm': kind = MONTH; break;
+            case 'd': kind = DAY; break;
+            case 'H': kind = HOUR; break;
+            case 'M': kind = MINUTE; break;
+            case 'S': kind = SECOND; break;
+            case 'N':
+            case 'L': kind = FRACTION; break;
+            case 'z': kind = ZONE; break;
+            case '%':
+                kinds.add(LITERAL);
+                literals.append('%');
+                continue;
+            default:
+                return null;
+            }
+            if (seen[kind]) {
+                return null;
+            }
+            seen[kind] = true;
+            kinds.add(kind);
+            literals.append('\0');
+        }
+
+        if (!seen[YEAR]) {
+            // strptime fills missing fields from the current date
+            return null;
+        }
+        if ((seen[FRACTION] && !seen[SECOND]) || (seen[SECOND] && !seen[MINUTE]) || (seen[MINUTE] && !seen[HOUR])
+                || (seen[HOUR] && !seen[DAY]) || (seen[DAY] && !seen[MONTH])) {
+            return null;
+        }
+
+        int[] kindArray = new int[kinds.size()];
+        for (int i = 0; i < kindArray.length; i++) {
+            kindArray[i] = kinds.get(i);
+        }
+        return new FastTimestampParser(kindArray, literals.toString().toCharArray(), defaultTimeZone);
+    }
+
+    /**
+     * @return the parsed timestamp, or null if the value is not in the exact shape of the format
+     */
+    Timestamp parse(CharSequence s)
+    {
+        int year = 0;
+        int month = 1;
+        int day = 1;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int usec = 0;
+        boolean hasZone = false;
+        int zoneOffsetSeconds = 0;
+
+        final int length = s.length();
+        int pos = 0;
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+            case LITERAL:
+                if (pos >= length || s.charAt(pos) != literals[i]) {
+                    return null;
+                }
+                pos++;
+                break;
+            case YEAR:
+                year = digits(s, pos, 4);
+                pos += 4;
+                break;
+            case MONTH:
+                month = digits(s, pos, 2);
+                pos += 2;
+                break;
+            case DAY:
+                day = digits(s, pos, 2);
+                pos += 2;
+                break;
+            case HOUR:
+                hour = digits(s, pos, 2);
+                pos += 2;
+                break;
+            case MINUTE:
+                minute = digits(s, pos, 2);
+                pos += 2;
+                break;
+            case SECOND:
+                second = digits(s, pos, 2);
+                pos += 2;
+                break;
+            case FRACTION:
+                {
+                    int start = pos;
+                    int scale = 100000;
+                    while (pos < length && isDigit(s.charAt(pos))) {
+                        usec += (s.charAt(pos) - '0') * scale;
+                        scale /= 10;
+                        pos++;
+                    }
+                    int count = pos - start;
+                    if (count < 1 || count > 9) {
+                        return null;
+                    }
+                }
+                break;
+            case ZONE:
+                {
+                    if (pos >= length) {
+                        return null;
+                    }
+                    char sign = s.charAt(pos);
+                    if (sign != '+' && sign != '-') {
+                        return null;
+                    }
+                    int hh = digits(s, pos + 1, 2);
+                    int mm;
+                    if (pos + 3 < length && s.charAt(pos + 3) == ':') {
+                        mm = digits(s, pos + 4, 2);
+                        pos += 6;
+                    } else {
+                        mm = digits(s, pos + 3, 2);
+                        pos += 5;
+                    }
+                    if (hh < 0 || mm < 0 || hh > 23 || mm > 59) {
+                        return null;
+                    }
+                    zoneOffsetSeconds = (hh * 3600 + mm * 60) * (sign == '-' ? -1 : 1);
+                    hasZone = true;
+                }
+                break;
+            default:
+                return null;
+            }
+            if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) {
+                return null;
+            }
+        }
+
+        if (pos != length) {
+            return null;
+        }
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            // leave out-of-range values to TimestampParser
+            return null;
+        }
+
+        long localSec = daysFromCivil(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+        long sec;
+        if (hasZone) {
+            sec = localSec - zoneOffsetSeconds;
+        } else if (fixedDefaultTimeZone) {
+            sec = (localSec * 1000 - defaultOffsetMillis) / 1000;
+        } else {
+            sec = defaultTimeZone.convertLocalToUTC(localSec * 1000, false) / 1000;
+        }
+        return Timestamp.ofEpochSecond(sec, usec * 1000L);
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    // returns -1 if not all of the n characters are digits
+    private static int digits(CharSequence s, int pos, int n)
+    {
+        if (pos + n > s.length()) {
+            return -1;
+        }
+        int v = 0;
+        for (int i = pos; i < pos + n; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static int daysInMonth(int year, int month)
+    {
+        if (month == 2 && !(year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            return 28;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    // days since 1970-01-01 in the proleptic Gregorian calendar
+    private static long daysFromCivil(int year, int month, int day)
+    {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+}
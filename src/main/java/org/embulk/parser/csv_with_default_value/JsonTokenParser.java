@@ -0,0 +1,134 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.embulk.spi.json.JsonParseException;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses a JSON value from the characters of a column, without creating a String of the value
+ * as {@link org.embulk.spi.json.JsonParser#parse(String)} does. A column of a UTF-8 or US-ASCII
+ * line read by the byte-level tokenizer is parsed from the bytes of the line. Other values are
+ * copied into a char buffer reused for the task. Values are built in the same way as
+ * {@link org.embulk.spi.json.JsonParser}.
+ */
+class JsonTokenParser
+{
+    private final JsonFactory factory;
+    private final boolean parseBytes;
+    private char[] chars = new char[1024];
+
+    JsonTokenParser(Charset charset)
+    {
+        this.factory = new JsonFactory();
+        factory.enable(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS);
+        factory.enable(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS);
+        // Jackson reads bytes as UTF-8 (or UTF-16/32 by BOM), so bytes of ISO-8859-1 are decoded as chars
+        this.parseBytes = charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @throws JsonParseException
+     */
+    Value parse(CharSequence value)
+    {
+        try (JsonParser parser = createParser(value)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new JsonParseException("Unable to parse empty string");
+            }
+            Value v = readValue(parser, token);
+            if (parser.nextToken() != null) {
+                throw new JsonParseException("Unexpected extra characters after a JSON value: " + value);
+            }
+            return v;
+        } catch (IOException ex) {
+            throw new JsonParseException("Failed to parse JSON: " + value, ex);
+        }
+    }
+
+    private JsonParser createParser(CharSequence value) throws IOException
+    {
+        if (parseBytes && value instanceof ColumnToken && ((ColumnToken) value).getSource() instanceof ByteLine) {
+            ColumnToken token = (ColumnToken) value;
+            ByteLine line = (ByteLine) token.getSource();
+            return factory.createParser(line.getBytes(), line.getOffset() + token.getStart(), token.length());
+        }
+
+        int length = value.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        if (value instanceof ColumnToken) {
+            ColumnToken token = (ColumnToken) value;
+            CharSequence source = token.getSource();
+            int start = token.getStart();
+            if (source instanceof String) {
+                ((String) source).getChars(start, start + length, chars, 0);
+            } else if (source instanceof StringBuilder) {
+                ((StringBuilder) source).getChars(start, start + length, chars, 0);
+            } else {
+                copyChars(value, length);
+            }
+        } else {
+            copyChars(value, length);
+        }
+        return factory.createParser(chars, 0, length);
+    }
+
+    private void copyChars(CharSequence value, int length)
+    {
+        for (int i = 0; i < length; i++) {
+            chars[i] = value.charAt(i);
+        }
+    }
+
+    private static Value readValue(JsonParser parser, JsonToken token) throws IOException
+    {
+        if (token == null) {
+            throw new JsonParseException("Unexpected end of a JSON value at " + parser.getCurrentLocation());
+        }
+        switch (token) {
+        case VALUE_NULL:
+            return ValueFactory.newNil();
+        case VALUE_TRUE:
+            return ValueFactory.newBoolean(true);
+        case VALUE_FALSE:
+            return ValueFactory.newBoolean(false);
+        case VALUE_NUMBER_FLOAT:
+            return ValueFactory.newFloat(parser.getDoubleValue());
+        case VALUE_NUMBER_INT:
+            if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                return ValueFactory.newInteger(parser.getBigIntegerValue());
+            }
+            return ValueFactory.newInteger(parser.getLongValue());
+        case VALUE_STRING:
+            return ValueFactory.newString(parser.getText());
+        case START_ARRAY:
+            List<Value> list = new ArrayList<>();
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                list.add(readValue(parser, token));
+            }
+            return ValueFactory.newArray(list);
+        case START_OBJECT:
+            Map<Value, Value> map = new LinkedHashMap<>();
+            while ((token = parser.nextToken()) != JsonToken.END_OBJECT) {
+                Value key = ValueFactory.newString(parser.getCurrentName());
+                map.put(key, readValue(parser, parser.nextToken()));
+            }
+            return ValueFactory.newMap(map);
+        default:
+            throw new JsonParseException("Unexpected token " + token + " at " + parser.getTokenLocation());
+        }
+    }
+}
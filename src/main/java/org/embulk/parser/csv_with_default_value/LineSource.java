@@ -0,0 +1,73 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.Exec;
+import org.embulk.spi.FileInput;
+import org.embulk.spi.util.LineDecoder;
+
+/**
+ * Lines of the input files read by {@link CsvTokenizer}. A returned line is not modified
+ * afterwards, so the tokenizer can keep it (e.g. lines of a multi-line quoted value).
+ */
+abstract class LineSource
+        implements AutoCloseable
+{
+    abstract boolean nextFile();
+
+    /**
+     * @return the next line without the line separator, or null at the end of the current file
+     */
+    abstract CharSequence poll();
+
+    @Override
+    public void close()
+    {
+    }
+
+    /**
+     * Scans the input as bytes if possible. Otherwise decodes each line with {@link LineDecoder}.
+     * If {@code pipelined} is set, lines are read in another thread.
+     */
+    static LineSource of(FileInput input, CsvWithDefaultValueParserPlugin.PluginTask task)
+    {
+        LineSource source;
+        if (task.getByteLevelTokenizer() && ByteLineSource.supports(task)) {
+            source = new ByteLineSource(input, task.getCharset());
+        } else {
+            source = of(new LineDecoder(input, task));
+        }
+        if (task.getPipelined()) {
+            return new PipelinedLineSource(source, Exec.session());
+        }
+        return source;
+    }
+
+    /**
+     * Same as {@link #of(FileInput, CsvWithDefaultValueParserPlugin.PluginTask)} but counts bytes
+     * and lines to the metrics if they are not null.
+     */
+    static LineSource of(FileInput input, CsvWithDefaultValueParserPlugin.PluginTask task, TaskMetrics metrics)
+    {
+        if (metrics == null) {
+            return of(input, task);
+        }
+        return metrics.countLines(of(metrics.countBytes(input), task));
+    }
+
+    static LineSource of(final LineDecoder decoder)
+    {
+        return new LineSource()
+        {
+            @Override
+            boolean nextFile()
+            {
+                return decoder.nextFile();
+            }
+
+            @Override
+            CharSequence poll()
+            {
+                return decoder.poll();
+            }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package org.embulk.parser.csv_with_default_value;
+
+/**
+ * Parses a decimal long from a range of characters without throwing on invalid input.
+ * Accepts exactly what {@link Long#parseLong(String)} accepts. Not thread-safe: the
+ * parsed value is kept in this instance until the next call.
+ */
+final class LongParser
+{
+    private long value;
+
+    /**
+     * @return true if the characters in [start, end) are a valid long. The value is available from {@link #getValue()}.
+     */
+    boolean tryParse(CharSequence s, int start, int end)
+    {
+        if (start >= end) {
+            return false;
+        }
+
+        int i = start;
+        boolean negative = false;
+        long limit = -Long.MAX_VALUE;
+
+        char first = s.charAt(i);
+        if (first < '0') {
+            if (first == '-') {
+                negative = true;
+                limit = Long.MIN_VALUE;
+            } else if (first != '+') {
+                return false;
+            }
+            i++;
+            if (i == end) {
+                // "+" or "-" alone
+                return false;
+            }
+        }
+
+        // accumulate negatively like Long.parseLong to cover Long.MIN_VALUE
+        final long multmin = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            int digit = c - '0';
+            if (digit < 0 || digit > 9) {
+                if (c >= 0x80) {
+                    // non-ASCII digits are accepted by Character.digit
+                    return tryParseSlow(s, start, end);
+                }
+                return false;
+            }
+            if (result < multmin) {
+                return false;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return false;
+            }
+            result -= digit;
+        }
+
+        value = negative ? result : -result;
+        return true;
+    }
+
+    boolean tryParse(CharSequence s)
+    {
+        return tryParse(s, 0, s.length());
+    }
+
+    long getValue()
+    {
+        return value;
+    }
+
+    private boolean tryParseSlow(CharSequence s, int start, int end)
+    {
+        try {
+            value = Long.parseLong(s.subSequence(start, end).toString());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
+import org.embulk.parser.csv_with_default_value.CsvWithDefaultValueParserPlugin.PluginTask;
+import org.embulk.spi.BufferAllocator;
+import org.embulk.spi.Exec;
+import org.embulk.spi.ExecAction;
+import org.embulk.spi.ExecSession;
+import org.embulk.spi.FileInput;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parses files with {@code parser_threads} threads. The task thread reads lines, skips header
+ * lines and cuts each file into chunks between records with {@link RecordBoundaryScanner}.
+ * Chunks are tokenized and converted on a {@link ForkJoinPool}, each by a worker that has its
+ * own {@link CsvTokenizer} and {@link ColumnConversionPlan}, into pages that are kept until all
+ * pages of the preceding chunks are added to the output. So the order of records is the same as
+ * the serial parsing, and line numbers in messages count from the beginning of the file.
+ * If parsing fails, the chunks not started yet are skipped, {@link #run} waits for the running
+ * ones, and the pages that are not added to the output are released.
+ */
+class ParallelChunkParser
+{
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final PluginTask task;
+    private final Schema schema;
+    private final int threads;
+    private final int chunkSize;  // in characters (bytes in byte-level mode)
+    private final DirtyDataReport report;
+    private final TaskMetrics metrics;  // null if metrics are disabled
+    private final RejectWriter rejects;  // null if rejects_path is not set
+
+    ParallelChunkParser(PluginTask task, Schema schema, TaskMetrics metrics, RejectWriter rejects)
+    {
+        this(task, schema, metrics, rejects, DEFAULT_CHUNK_SIZE);
+    }
+
+    ParallelChunkParser(PluginTask task, Schema schema, TaskMetrics metrics, RejectWriter rejects, int chunkSize)
+    {
+        this.task = task;
+        this.schema = schema;
+        this.metrics = metrics;
+        this.rejects = rejects;
+        this.threads = task.getParserThreads();
+        this.chunkSize = chunkSize;
+        this.report = new DirtyDataReport(schema, task.getMaxLoggedSamples(), Exec.getLogger(CsvWithDefaultValueParserPlugin.class));
+    }
+
+    private static class Chunk
+    {
+        private final List<CharSequence> lines = new ArrayList<>();
+        private final int fileIndex;
+        private final List<String> header;  // null unless header_mapping is set
+        private final long firstLineNumber;
+        private long size = 0;
+
+        Chunk(int fileIndex, List<String> header, long firstLineNumber)
+        {
+            this.fileIndex = fileIndex;
+            this.header = header;
+            this.firstLineNumber = firstLineNumber;
+        }
+    }
+
+    private static class ParsedChunk
+    {
+        private final List<Page> pages;
+        private final Throwable error;
+
+        ParsedChunk(List<Page> pages, Throwable error)
+        {
+            this.pages = pages;
+            this.error = error;
+        }
+    }
+
+    private static class ChunkLineSource
+            extends LineSource
+    {
+        private List<CharSequence> lines;
+        private int next;
+        private boolean started;
+
+        void reset(List<CharSequence> lines)
+        {
+            this.lines = lines;
+            this.next = 0;
+            this.started = false;
+        }
+
+        @Override
+        boolean nextFile()
+        {
+            if (started) {
+                return false;
+            }
+            started = true;
+            return true;
+        }
+
+        @Override
+        CharSequence poll()
+        {
+            return next < lines.size() ? lines.get(next++) : null;
+        }
+    }
+
+    private class Worker
+    {
+        private final ChunkLineSource source = new ChunkLineSource();
+        private final CsvTokenizer tokenizer = new CsvTokenizer(source, task);
+        private final ColumnConversionPlan plan = ColumnConversionPlan.compile(task, schema);
+        private List<String> header = null;  // header that plan is mapped by
+
+        Worker()
+        {
+            tokenizer.setMetrics(plan.getMetrics());
+            plan.getReport().setRejectWriter(rejects);
+            plan.getReport().shareSamplesWith(report);
+            if (metrics != null) {
+                metrics.add(plan);
+            }
+        }
+
+        List<Page> parse(Chunk chunk, BufferAllocator allocator)
+        {
+            final List<Page> pages = new ArrayList<>();
+            if (chunk.header != null && chunk.header != header) {
+                plan.mapHeader(chunk.header);
+                header = chunk.header;
+            }
+            source.reset(chunk.lines);
+            tokenizer.nextFile();
+            tokenizer.setCurrentLineNumber(chunk.firstLineNumber - 1);
+            boolean parsed = false;
+            try (PageBuilder pageBuilder = new PageBuilder(allocator, schema, new PageOutput()
+                    {
+                        public void add(Page page)
+                        {
+                            pages.add(page);
+                        }
+
+                        public void finish()
+                        {
+                        }
+
+                        public void close()
+                        {
+                        }
+                    })) {
+                CsvWithDefaultValueParserPlugin.parseRecords(task, tokenizer, plan, pageBuilder, chunk.fileIndex);
+                pageBuilder.finish();
+                parsed = true;
+            } finally {
+                if (!parsed) {
+                    releasePages(pages, 0);
+                }
+            }
+            return pages;
+        }
+    }
+
+    void run(FileInput input, PageOutput output, final BufferAllocator allocator)
+    {
+        final ExecSession session = Exec.session();
+        final BlockingQueue<Worker> idleWorkers = new ArrayBlockingQueue<>(threads);
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            // plans are compiled in the task thread where Exec is available
+            Worker worker = new Worker();
+            workers.add(worker);
+            idleWorkers.add(worker);
+        }
+
+        RecordBoundaryScanner scanner = new RecordBoundaryScanner(task);
+        ChunkLineSource headerSource = new ChunkLineSource();
+        CsvTokenizer headerTokenizer = new CsvTokenizer(headerSource, task);
+        Deque<Future<ParsedChunk>> pending = new ArrayDeque<>();
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        boolean finished = false;
+        int skipHeaderLines = task.getSkipHeaderLines();
+        int fileIndex = -1;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (LineSource lineSource = LineSource.of(input, task, metrics)) {
+            while (lineSource.nextFile()) {
+                scanner.reset();
+                fileIndex++;
+                long lineNumber = 0;
+                // skip the header lines for each file
+                for (; skipHeaderLines > 0; skipHeaderLines--) {
+                    if (lineSource.poll() == null) {
+                        break;
+                    }
+                    lineNumber++;
+                }
+
+                List<String> header = null;
+                if (task.getHeaderMapping()) {
+                    // tokenizes the lines of the first record
+                    List<CharSequence> headerLines = new ArrayList<>();
+                    CharSequence line;
+                    while (header == null && (line = lineSource.poll()) != null) {
+                        lineNumber++;
+                        headerLines.add(line);
+                        if (scanner.endsRecord(line)) {
+                            headerSource.reset(headerLines);
+                            headerTokenizer.nextFile();
+                            header = headerTokenizer.readHeaderLine();  // null if the lines are empty or comments
+                            headerLines = new ArrayList<>();
+                        }
+                    }
+                    if (header == null) {
+                        // empty file
+                        continue;
+                    }
+                }
+
+                Chunk chunk = new Chunk(fileIndex, header, lineNumber + 1);
+                CharSequence line;
+                while ((line = lineSource.poll()) != null) {
+                    lineNumber++;
+                    chunk.lines.add(line);
+                    chunk.size += line.length();
+                    if (scanner.endsRecord(line) && chunk.size >= chunkSize) {
+                        pending.add(submit(pool, session, idleWorkers, allocator, aborted, chunk));
+                        chunk = new Chunk(fileIndex, header, lineNumber + 1);
+                        while (pending.size() > threads * 2) {
+                            addPages(pending, output);
+                        }
+                    }
+                }
+                if (!chunk.lines.isEmpty()) {
+                    pending.add(submit(pool, session, idleWorkers, allocator, aborted, chunk));
+                }
+            }
+            while (!pending.isEmpty()) {
+                addPages(pending, output);
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                aborted.set(true);
+            }
+            // workers must not use the session, the allocator or the reject writer after run returns
+            pool.shutdown();
+            awaitTermination(pool);
+            for (Future<ParsedChunk> future : pending) {
+                ParsedChunk parsed = Futures.getUnchecked(future);
+                if (parsed.pages != null) {
+                    releasePages(parsed.pages, 0);
+                }
+            }
+        }
+        output.finish();
+
+        for (Worker worker : workers) {
+            report.add(worker.plan.getReport());
+        }
+        report.logSummary();
+    }
+
+    private static Future<ParsedChunk> submit(ForkJoinPool pool, final ExecSession session,
+            final BlockingQueue<Worker> idleWorkers, final BufferAllocator allocator, final AtomicBoolean aborted, final Chunk chunk)
+    {
+        return pool.submit(new Callable<ParsedChunk>()
+        {
+            public ParsedChunk call()
+            {
+                if (aborted.get()) {
+                    return new ParsedChunk(new ArrayList<Page>(), null);
+                }
+                try {
+                    return new ParsedChunk(Exec.doWith(session, new ExecAction<List<Page>>()
+                    {
+                        public List<Page> run() throws InterruptedException
+                        {
+                            // at most as many chunks as threads run at the same time
+                            Worker worker = idleWorkers.take();
+                            try {
+                                List<Page> pages = worker.parse(chunk, allocator);
+                                if (aborted.get()) {
+                                    // the task thread may not see the result any more
+                                    releasePages(pages, 0);
+                                    pages.clear();
+                                }
+                                return pages;
+                            } finally {
+                                idleWorkers.add(worker);
+                            }
+                        }
+                    }), null);
+                } catch (ExecutionException ex) {
+                    // rethrown by the task thread as is
+                    return new ParsedChunk(null, ex.getCause());
+                }
+            }
+        });
+    }
+
+    // adds the pages of the first pending chunk. It stays pending if interrupted.
+    private static void addPages(Deque<Future<ParsedChunk>> pending, PageOutput output)
+    {
+        ParsedChunk parsed;
+        try {
+            parsed = pending.peekFirst().get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw Throwables.propagate(ex);
+        }
+        pending.removeFirst();
+        if (parsed.error != null) {
+            throw Throwables.propagate(parsed.error);
+        }
+        int added = 0;
+        try {
+            for (Page page : parsed.pages) {
+                output.add(page);
+                added++;
+            }
+        } finally {
+            releasePages(parsed.pages, added);
+        }
+    }
+
+    // releases the pages from the index on
+    private static void releasePages(List<Page> pages, int from)
+    {
+        for (int i = from; i < pages.size(); i++) {
+            pages.get(i).release();
+        }
+    }
+
+    private static void awaitTermination(ForkJoinPool pool)
+    {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException ex) {
+                // running chunks finish in a bounded time, so wait for them anyway
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counters and sampled conversion timings of a {@link ColumnConversionPlan}, kept only if
+ * {@code metrics} is enabled. They are updated by the thread that uses the plan, and read by
+ * {@link TaskMetrics} from other threads without synchronization, so live values may lag behind.
+ */
+class ParserMetrics
+{
+    // conversions of 1 of this many records are timed
+    static final int SAMPLE_INTERVAL = 64;
+
+    private final Schema schema;
+    private final long[] conversionNanos;  // per column
+    private final long[] conversions;  // number of timed conversions per column
+    private final Map<String, Long> skippedRecords = new LinkedHashMap<>();  // by simple name of the exception class
+    private long records;
+    private long multiLineValues;
+    private int recordsToNextSample = SAMPLE_INTERVAL;
+
+    ParserMetrics(Schema schema)
+    {
+        this.schema = schema;
+        this.conversionNanos = new long[schema.getColumnCount()];
+        this.conversions = new long[schema.getColumnCount()];
+    }
+
+    /**
+     * @return true if the conversions of the next record should be timed
+     */
+    boolean sampleRecord()
+    {
+        if (--recordsToNextSample > 0) {
+            return false;
+        }
+        recordsToNextSample = SAMPLE_INTERVAL;
+        return true;
+    }
+
+    void conversionTimed(Column column, long nanos)
+    {
+        conversionNanos[column.getIndex()] += nanos;
+        conversions[column.getIndex()]++;
+    }
+
+    void recordEmitted()
+    {
+        records++;
+    }
+
+    synchronized void recordSkipped(Exception cause)
+    {
+        String name = cause.getClass().getSimpleName();
+        Long count = skippedRecords.get(name);
+        skippedRecords.put(name, count == null ? 1 : count + 1);
+    }
+
+    void multiLineValue()
+    {
+        multiLineValues++;
+    }
+
+    long getRecords()
+    {
+        return records;
+    }
+
+    long getMultiLineValues()
+    {
+        return multiLineValues;
+    }
+
+    synchronized void addSkippedRecordsTo(Map<String, Long> counts)
+    {
+        for (Map.Entry<String, Long> entry : skippedRecords.entrySet()) {
+            Long count = counts.get(entry.getKey());
+            counts.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+        }
+    }
+
+    /**
+     * Adds the timed nanoseconds and conversions of each column to the arrays of two elements keyed by the column type name.
+     */
+    void addConversionTimesTo(Map<String, long[]> times)
+    {
+        for (Column column : schema.getColumns()) {
+            String type = column.getType().getName();
+            long[] time = times.get(type);
+            if (time == null) {
+                time = new long[2];
+                times.put(type, time);
+            }
+            time[0] += conversionNanos[column.getIndex()];
+            time[1] += conversions[column.getIndex()];
+        }
+    }
+}
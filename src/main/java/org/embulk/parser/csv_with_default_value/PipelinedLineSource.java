@@ -0,0 +1,220 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.embulk.spi.Exec;
+import org.embulk.spi.ExecAction;
+import org.embulk.spi.ExecSession;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads lines of another {@link LineSource} in a separate thread so that decoding and line
+ * splitting run in parallel with tokenizing and conversion in the task thread.
+ *
+ * Lines are handed over in batches. A fixed number of batches circulate between the reader
+ * and the task thread through two bounded queues, so the reader waits when the task thread
+ * is behind and batches are reused instead of allocated. Lines themselves are not modified
+ * after they are read, so the tokenizer can keep them after their batch is reused.
+ */
+class PipelinedLineSource
+        extends LineSource
+{
+    static final int BATCH_COUNT = 16;
+    static final int BATCH_SIZE = 1024;  // lines
+    // how long close() waits for the reader blocked in the input, which may not respond to interrupts
+    static final long CLOSE_TIMEOUT_MILLIS = 10000;
+
+    private static class Batch
+    {
+        private final CharSequence[] lines;
+        private int size;
+        private boolean startsFile;
+        private boolean endOfInput;
+        private Throwable error;
+
+        Batch(int capacity)
+        {
+            this.lines = new CharSequence[capacity];
+        }
+
+        void reset(boolean startsFile)
+        {
+            this.size = 0;
+            this.startsFile = startsFile;
+            this.endOfInput = false;
+        }
+
+        boolean isFull()
+        {
+            return size == lines.length;
+        }
+    }
+
+    private final BlockingQueue<Batch> freeBatches;
+    private final BlockingQueue<Batch> filledBatches;
+    private final ExecutorService reader;
+    private final Future<Void> readerFuture;
+    private final long closeTimeoutMillis;
+
+    private Batch current = null;  // batch being read by the task thread
+    private int pos = 0;
+    private Batch next = null;  // batch that starts the next file or ends the input
+
+    PipelinedLineSource(LineSource source, ExecSession session)
+    {
+        this(source, session, CLOSE_TIMEOUT_MILLIS);
+    }
+
+    PipelinedLineSource(final LineSource source, final ExecSession session, long closeTimeoutMillis)
+    {
+        this.closeTimeoutMillis = closeTimeoutMillis;
+        this.freeBatches = new ArrayBlockingQueue<>(BATCH_COUNT);
+        this.filledBatches = new ArrayBlockingQueue<>(BATCH_COUNT + 1);  // + a batch to pass an error
+        for (int i = 0; i < BATCH_COUNT; i++) {
+            freeBatches.add(new Batch(BATCH_SIZE));
+        }
+
+        this.reader = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("csv_with_default_value-reader-%d").setDaemon(true).build());
+        this.readerFuture = reader.submit(new Callable<Void>()
+        {
+            public Void call() throws Exception
+            {
+                try {
+                    return Exec.doWith(session, new ExecAction<Void>()
+                    {
+                        public Void run() throws InterruptedException
+                        {
+                            read(source);
+                            return null;
+                        }
+                    });
+                } catch (Throwable ex) {
+                    // an Error is not wrapped by Exec.doWith, and must reach the task thread too,
+                    // or the task thread waits for the next batch forever
+                    Throwable error = ex instanceof ExecutionException ? ex.getCause() : ex;
+                    if (!(error instanceof InterruptedException)) {
+                        Batch batch = new Batch(0);
+                        batch.error = error;
+                        filledBatches.put(batch);
+                    }
+                    if (ex instanceof Error) {
+                        throw (Error) ex;
+                    }
+                    return null;
+                }
+            }
+        });
+    }
+
+    private void read(LineSource source) throws InterruptedException
+    {
+        while (source.nextFile()) {
+            Batch batch = freeBatches.take();
+            batch.reset(true);
+            CharSequence line;
+            while ((line = source.poll()) != null) {
+                if (batch.isFull()) {
+                    filledBatches.put(batch);
+                    batch = freeBatches.take();
+                    batch.reset(false);
+                }
+                batch.lines[batch.size++] = line;
+            }
+            filledBatches.put(batch);
+        }
+        Batch batch = freeBatches.take();
+        batch.reset(false);
+        batch.endOfInput = true;
+        filledBatches.put(batch);
+    }
+
+    private Batch takeFilledBatch()
+    {
+        Batch batch;
+        try {
+            batch = filledBatches.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(ex);
+        }
+        if (batch.error != null) {
+            throw Throwables.propagate(batch.error);
+        }
+        return batch;
+    }
+
+    private void release(Batch batch)
+    {
+        if (batch != null) {
+            freeBatches.add(batch);
+        }
+    }
+
+    @Override
+    boolean nextFile()
+    {
+        // skip the rest of the current file
+        while (next == null) {
+            Batch batch = takeFilledBatch();
+            if (batch.startsFile || batch.endOfInput) {
+                next = batch;
+            } else {
+                release(batch);
+            }
+        }
+        if (next.endOfInput) {
+            return false;
+        }
+        release(current);
+        current = next;
+        pos = 0;
+        next = null;
+        return true;
+    }
+
+    @Override
+    CharSequence poll()
+    {
+        while (current != null && pos == current.size) {
+            if (next != null) {
+                return null;
+            }
+            Batch batch = takeFilledBatch();
+            if (batch.startsFile || batch.endOfInput) {
+                next = batch;
+                return null;
+            }
+            release(current);
+            current = batch;
+            pos = 0;
+        }
+        return current == null ? null : current.lines[pos++];
+    }
+
+    @Override
+    public void close()
+    {
+        // stops the reader if the task thread finishes before the end of the input
+        readerFuture.cancel(true);
+        reader.shutdownNow();
+        try {
+            // the input should not be read after the parser returns
+            if (!reader.awaitTermination(closeTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                // the daemon thread is interrupted, so it stops as soon as the input returns
+                Exec.getLogger(CsvWithDefaultValueParserPlugin.class).warn(String.format(
+                            "The reader thread did not stop in %d ms. It is left to stop after the input returns", closeTimeoutMillis));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
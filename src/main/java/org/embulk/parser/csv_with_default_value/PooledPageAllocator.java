@@ -0,0 +1,161 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.Buffer;
+import org.embulk.spi.BufferAllocator;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+
+/**
+ * {@link BufferAllocator} of a task that keeps page buffers released by the downstream plugins
+ * and hands them out again instead of allocating new ones from the Exec allocator. Pages are
+ * requested with at least {@code page_size} bytes (or the default size of the Exec allocator),
+ * which the Exec allocator may round up, so the capacity of the first page actually allocated is
+ * the page size of the pool, and only buffers of that capacity are pooled. Buffers larger than a
+ * page, for records that do not fit in a page, are passed through. Thread-safe, because pages
+ * built by {@code parser_threads} are released in the task thread.
+ */
+class PooledPageAllocator
+        implements BufferAllocator, AutoCloseable
+{
+    private final BufferAllocator allocator;
+    private final int minPageSize;  // 0 for the default size of the allocator
+    private final int maxPooledPages;
+    private final Logger log;
+    private final ArrayDeque<PooledBuffer> idle = new ArrayDeque<>();
+    private int pageSize = 0;  // capacity of the first page, 0 until it is allocated
+    private boolean closed = false;
+    private long allocations = 0;
+    private long hits = 0;
+    private long passedThrough = 0;
+
+    /**
+     * @param minPageSize minimum capacity of a page, or 0 for the default size of {@code allocator}
+     * @param maxPooledPages number of released pages kept for reuse. Further released pages are
+     *        returned to {@code allocator}.
+     */
+    PooledPageAllocator(BufferAllocator allocator, int minPageSize, int maxPooledPages, Logger log)
+    {
+        this.allocator = allocator;
+        this.minPageSize = minPageSize;
+        this.maxPooledPages = maxPooledPages;
+        this.log = log;
+    }
+
+    @Override
+    public synchronized Buffer allocate()
+    {
+        allocations++;
+        PooledBuffer buffer = idle.pollFirst();
+        if (buffer != null) {
+            hits++;
+            buffer.reuse();
+            return buffer;
+        }
+        Buffer page = minPageSize > 0 ? allocator.allocate(minPageSize) : allocator.allocate();
+        if (pageSize == 0) {
+            pageSize = page.capacity();
+        }
+        return new PooledBuffer(page);
+    }
+
+    @Override
+    public Buffer allocate(int minimumCapacity)
+    {
+        synchronized (this) {
+            if (pageSize > 0 && minimumCapacity > pageSize) {
+                passedThrough++;
+                return allocator.allocate(minimumCapacity);
+            }
+        }
+        Buffer buffer = allocate();
+        if (buffer.capacity() < minimumCapacity) {
+            // the first page turned out to be smaller
+            buffer.release();
+            synchronized (this) {
+                passedThrough++;
+            }
+            return allocator.allocate(minimumCapacity);
+        }
+        return buffer;
+    }
+
+    private synchronized void recycle(PooledBuffer buffer)
+    {
+        if (closed || idle.size() >= maxPooledPages || buffer.capacity() != pageSize) {
+            buffer.page.release();
+        } else {
+            idle.addFirst(buffer);  // the most recently used buffer is likely in the CPU cache
+        }
+    }
+
+    synchronized long getAllocations()
+    {
+        return allocations;
+    }
+
+    synchronized long getHits()
+    {
+        return hits;
+    }
+
+    synchronized double getHitRate()
+    {
+        return allocations > 0 ? (double) hits / allocations : 0.0;
+    }
+
+    synchronized int getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     * Returns the idle pages to the Exec allocator. Pages released later are returned directly.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (PooledBuffer buffer : idle) {
+            buffer.page.release();
+        }
+        idle.clear();
+        log.info(String.format("csv_with_default_value page pool: page size=%d, pages allocated=%d, reused=%d (hit rate %.1f%%), larger buffers=%d",
+                    pageSize, allocations, hits, getHitRate() * 100, passedThrough));
+    }
+
+    // a page of the Exec allocator that comes back to the pool when released
+    private final class PooledBuffer
+            extends Buffer
+    {
+        private final Buffer page;
+        private boolean released = false;
+
+        PooledBuffer(Buffer page)
+        {
+            super(page.array(), page.offset(), page.capacity());
+            this.page = page;
+        }
+
+        void reuse()
+        {
+            released = false;
+            limit(capacity());
+        }
+
+        @Override
+        public void release()
+        {
+            synchronized (PooledPageAllocator.this) {
+                if (released) {
+                    return;  // a page must not be pooled twice
+                }
+                released = true;
+            }
+            recycle(this);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.embulk.parser.csv_with_default_value;
+
+/**
+ * Tells whether a line ends a record or continues into a multi-line quoted value, so that
+ * the lines of a file can be split into chunks between records. It follows the rules of
+ * {@link CsvTokenizer} for well-formed records: a quote opens a quoted value only at the
+ * beginning of a column (after spaces if {@code trim_if_not_quoted}), a doubled quote or an
+ * escaped quote does not close it, and empty and comment lines are records of their own.
+ *
+ * Lines of a broken record, which {@link CsvTokenizer} skips and parses again line by line,
+ * may be grouped differently. A quoted value longer than {@code max_quoted_size_limit} ends
+ * at the end of its line so that an unclosed quote does not make a chunk of the rest of the file.
+ */
+class RecordBoundaryScanner
+{
+    private final char delimiterChar;
+    private final String delimiterFollowingString;
+    private final char quote;
+    private final char escape;
+    private final boolean trimIfNotQuoted;
+    private final String commentLineMarker;
+    private final long maxQuotedSizeLimit;
+    private final long quotePattern;
+
+    private boolean inQuotedValue = false;
+    private long quotedValueSize = 0;
+
+    RecordBoundaryScanner(CsvWithDefaultValueParserPlugin.PluginTask task)
+    {
+        String delimiter = task.getDelimiter();
+        delimiterChar = delimiter.charAt(0);
+        delimiterFollowingString = delimiter.substring(1);
+        quote = task.getQuoteChar().or(CsvWithDefaultValueParserPlugin.QuoteCharacter.noQuote()).getCharacter();
+        escape = task.getEscapeChar().or(CsvWithDefaultValueParserPlugin.EscapeCharacter.noEscape()).getCharacter();
+        trimIfNotQuoted = task.getTrimIfNotQuoted();
+        commentLineMarker = task.getCommentLineMarker().orNull();
+        maxQuotedSizeLimit = task.getMaxQuotedSizeLimit();
+        quotePattern = SwarScanner.pattern(quote);
+    }
+
+    /**
+     * Starts a new file.
+     */
+    void reset()
+    {
+        inQuotedValue = false;
+        quotedValueSize = 0;
+    }
+
+    /**
+     * @return true if the next line starts a new record
+     */
+    boolean endsRecord(CharSequence line)
+    {
+        int length = line.length();
+        int pos;
+        if (inQuotedValue) {
+            quotedValueSize += length;
+            pos = skipQuotedValue(line, 0);
+            if (pos < 0) {
+                if (quotedValueSize > maxQuotedSizeLimit) {
+                    // CsvTokenizer rejects this value
+                    inQuotedValue = false;
+                    return true;
+                }
+                return false;
+            }
+            inQuotedValue = false;
+            pos = skipColumn(line, pos);
+        } else {
+            if (length == 0 || (commentLineMarker != null && startsWith(line, commentLineMarker))) {
+                return true;
+            }
+            if (quote == CsvTokenizer.NO_QUOTE || !containsQuote(line)) {
+                return true;
+            }
+            pos = 0;
+        }
+
+        // pos is the beginning of a column, or -1 at the end of the line
+        while (pos >= 0) {
+            if (trimIfNotQuoted) {
+                while (pos < length && line.charAt(pos) == ' ') {
+                    pos++;
+                }
+            }
+            if (pos < length && line.charAt(pos) == quote) {
+                int end = skipQuotedValue(line, pos + 1);
+                if (end < 0) {
+                    inQuotedValue = true;
+                    quotedValueSize = length - pos;
+                    return false;
+                }
+                pos = end;
+            }
+            pos = skipColumn(line, pos);
+        }
+        return true;
+    }
+
+    // returns the position after the closing quote, or -1 if the value continues to the next line
+    private int skipQuotedValue(CharSequence line, int pos)
+    {
+        int length = line.length();
+        while (pos < length) {
+            char c = line.charAt(pos++);
+            if (c == quote) {
+                if (pos < length && line.charAt(pos) == quote) {
+                    pos++;  // escaped quote
+                } else {
+                    return pos;
+                }
+            } else if (escape != CsvTokenizer.NO_ESCAPE && c == escape) {
+                if (pos < length && (line.charAt(pos) == quote || line.charAt(pos) == escape)) {
+                    pos++;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // returns the beginning of the next column, or -1 at the end of the line
+    private int skipColumn(CharSequence line, int pos)
+    {
+        int length = line.length();
+        for (; pos < length; pos++) {
+            if (line.charAt(pos) == delimiterChar && regionMatches(line, pos + 1, delimiterFollowingString)) {
+                return pos + 1 + delimiterFollowingString.length();
+            }
+        }
+        return -1;
+    }
+
+    private boolean containsQuote(CharSequence line)
+    {
+        if (line instanceof ByteLine) {
+            ByteLine byteLine = (ByteLine) line;
+            int end = byteLine.getOffset() + byteLine.length();
+            return SwarScanner.indexOf(byteLine.getBytes(), byteLine.getOffset(), end, quotePattern, quotePattern) < end;
+        }
+        return line.toString().indexOf(quote) >= 0;
+    }
+
+    private static boolean startsWith(CharSequence s, String prefix)
+    {
+        return regionMatches(s, 0, prefix);
+    }
+
+    private static boolean regionMatches(CharSequence s, int pos, String str)
+    {
+        if (s.length() < pos + str.length()) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (s.charAt(pos + i) != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,278 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.embulk.config.ConfigException;
+import org.embulk.parser.csv_with_default_value.CsvWithDefaultValueParserPlugin.RejectsFormat;
+import org.embulk.spi.DataException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes skipped lines to a local file of {@code rejects_path} in a separate thread.
+ *
+ * Rejects are collected into batches that are handed over to the writer through a bounded
+ * queue, so a thread that skips a line waits only if the writer is {@link #BATCH_COUNT}
+ * batches behind. {@link #add} can be called from parser threads at the same time.
+ * If writing fails for any reason, the remaining rejects are discarded and {@link #close()}
+ * throws the error. The writer keeps taking batches, so {@link #add} never waits for it forever.
+ */
+class RejectWriter
+        implements AutoCloseable
+{
+    static final int BATCH_COUNT = 16;
+    static final int BATCH_SIZE = 256;  // rejects
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+    private static final List<Reject> END_OF_REJECTS = new ArrayList<>();
+
+    private static class Reject
+    {
+        private final int fileIndex;
+        private final long lineNumber;
+        private final String exception;
+        private final String message;
+        private final String line;
+
+        Reject(int fileIndex, long lineNumber, Exception cause, String line)
+        {
+            this.fileIndex = fileIndex;
+            this.lineNumber = lineNumber;
+            this.exception = cause.getClass().getName();
+            this.message = cause.getMessage();
+            this.line = line;
+        }
+    }
+
+    private final Path path;
+    private final BlockingQueue<List<Reject>> batches = new ArrayBlockingQueue<>(BATCH_COUNT);
+    private final ExecutorService writer;
+    private final Future<Void> writerFuture;
+    private List<Reject> batch = new ArrayList<>(BATCH_SIZE);
+    private boolean closed = false;
+
+    // visible for testing
+    RejectWriter(Path path, final Writer out, final RejectsFormat format)
+    {
+        this.path = path;
+        this.writer = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("csv_with_default_value-rejects-%d").setDaemon(true).build());
+        this.writerFuture = writer.submit(new Callable<Void>()
+        {
+            public Void call() throws Exception
+            {
+                write(out, format);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Creates the file {@code <rejects_path>.<sequence number>.<csv or jsonl>} of a task. The
+     * sequence number is the next one of the JVM whose file does not exist yet, so files of
+     * previous runs and of other processes are never overwritten.
+     */
+    static RejectWriter open(String pathPrefix, RejectsFormat format)
+    {
+        return open(pathPrefix, format, SEQUENCE);
+    }
+
+    // visible for testing
+    static RejectWriter open(String pathPrefix, RejectsFormat format, AtomicInteger sequence)
+    {
+        while (true) {
+            Path path = Paths.get(String.format("%s.%03d.%s", pathPrefix, sequence.getAndIncrement(), format.getExtension()));
+            Writer out;
+            try {
+                out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException ex) {
+                continue;
+            } catch (IOException ex) {
+                throw new ConfigException(String.format("Failed to create rejects file %s", path), ex);
+            }
+            return new RejectWriter(path, out, format);
+        }
+    }
+
+    Path getPath()
+    {
+        return path;
+    }
+
+    synchronized void add(int fileIndex, long lineNumber, String line, Exception cause)
+    {
+        batch.add(new Reject(fileIndex, lineNumber, cause, line));
+        if (batch.size() == BATCH_SIZE) {
+            put(batch);
+            batch = new ArrayList<>(BATCH_SIZE);
+        }
+    }
+
+    private void put(List<Reject> rejects)
+    {
+        try {
+            batches.put(rejects);
+        } catch (InterruptedException ex) {
+            throw Throwables.propagate(ex);
+        }
+    }
+
+    private void write(Writer out, RejectsFormat format) throws InterruptedException
+    {
+        Throwable error = null;
+        try {
+            RejectFormatter formatter = format == RejectsFormat.JSONL ? new JsonLinesFormatter(out) : new CsvFormatter(out);
+            List<Reject> rejects;
+            while ((rejects = batches.take()) != END_OF_REJECTS) {
+                if (error != null) {
+                    continue;  // keeps taking batches so that add() does not wait forever
+                }
+                try {
+                    for (Reject reject : rejects) {
+                        formatter.write(reject);
+                    }
+                    if (batches.isEmpty()) {
+                        out.flush();
+                    }
+                } catch (Throwable ex) {
+                    // also a RuntimeException or an Error of a formatter, which must not stop the loop
+                    error = ex;
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // thrown by the constructor of the formatter
+            error = ex;
+            while (batches.take() != END_OF_REJECTS) {
+                // discards the rejects
+            }
+        } finally {
+            try {
+                out.close();
+            } catch (IOException | RuntimeException ex) {
+                if (error == null) {
+                    error = ex;
+                }
+            }
+        }
+        if (error != null) {
+            throw new DataException(String.format("Failed to write rejected lines to %s", path), error);
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!batch.isEmpty()) {
+            put(batch);
+            batch = null;
+        }
+        put(END_OF_REJECTS);
+        writer.shutdown();
+        try {
+            writerFuture.get();
+        } catch (InterruptedException ex) {
+            throw Throwables.propagate(ex);
+        } catch (ExecutionException ex) {
+            throw Throwables.propagate(ex.getCause());
+        }
+    }
+
+    private interface RejectFormatter
+    {
+        void write(Reject reject) throws IOException;
+    }
+
+    private static class CsvFormatter
+            implements RejectFormatter
+    {
+        private final Writer out;
+
+        CsvFormatter(Writer out) throws IOException
+        {
+            this.out = out;
+            out.write("file_index,line_number,exception,message,line\n");
+        }
+
+        public void write(Reject reject) throws IOException
+        {
+            out.write(Integer.toString(reject.fileIndex));
+            out.write(',');
+            out.write(Long.toString(reject.lineNumber));
+            out.write(',');
+            writeQuoted(reject.exception);
+            out.write(',');
+            writeQuoted(reject.message);
+            out.write(',');
+            writeQuoted(reject.line);
+            out.write('\n');
+        }
+
+        // null is written as an empty unquoted value
+        private void writeQuoted(String value) throws IOException
+        {
+            if (value == null) {
+                return;
+            }
+            out.write('"');
+            int start = 0;
+            for (int i = value.indexOf('"'); i >= 0; i = value.indexOf('"', start)) {
+                out.write(value, start, i + 1 - start);
+                out.write('"');
+                start = i + 1;
+            }
+            out.write(value, start, value.length() - start);
+            out.write('"');
+        }
+    }
+
+    private static class JsonLinesFormatter
+            implements RejectFormatter
+    {
+        private final Writer out;
+        private final JsonGenerator generator;
+
+        JsonLinesFormatter(Writer out) throws IOException
+        {
+            this.out = out;
+            this.generator = new JsonFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        }
+
+        public void write(Reject reject) throws IOException
+        {
+            generator.writeStartObject();
+            generator.writeNumberField("file_index", reject.fileIndex);
+            generator.writeNumberField("line_number", reject.lineNumber);
+            generator.writeStringField("exception", reject.exception);
+            generator.writeStringField("message", reject.message);
+            generator.writeStringField("line", reject.line);
+            generator.writeEndObject();
+            generator.flush();
+            out.write('\n');
+        }
+    }
+}
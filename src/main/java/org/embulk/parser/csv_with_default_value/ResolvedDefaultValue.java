@@ -0,0 +1,161 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.time.Timestamp;
+import org.msgpack.value.Value;
+
+/**
+ * A default value resolved from {@link ColumnDefaultValue} into a typed constant once per task,
+ * so that applying it only writes the constant to the {@link PageBuilder}.
+ */
+abstract class ResolvedDefaultValue
+{
+    private static final ResolvedDefaultValue NULL_VALUE = new NullValue();
+
+    abstract void setTo(PageBuilder pageBuilder, Column column);
+
+    boolean isNull()
+    {
+        return false;
+    }
+
+    static ResolvedDefaultValue ofLong(long value)
+    {
+        return new LongValue(value);
+    }
+
+    static ResolvedDefaultValue ofDouble(double value)
+    {
+        return new DoubleValue(value);
+    }
+
+    static ResolvedDefaultValue ofTimestamp(Timestamp value)
+    {
+        return new TimestampValue(value);
+    }
+
+    static ResolvedDefaultValue ofJson(Value value)
+    {
+        return new JsonValue(value);
+    }
+
+    static ResolvedDefaultValue ofNull()
+    {
+        return NULL_VALUE;
+    }
+
+    private static class LongValue
+            extends ResolvedDefaultValue
+    {
+        private final long value;
+
+        LongValue(long value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        void setTo(PageBuilder pageBuilder, Column column)
+        {
+            pageBuilder.setLong(column, value);
+        }
+
+        @Override
+        public String toString()
+        {
+            return Long.toString(value);
+        }
+    }
+
+    private static class DoubleValue
+            extends ResolvedDefaultValue
+    {
+        private final double value;
+
+        DoubleValue(double value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        void setTo(PageBuilder pageBuilder, Column column)
+        {
+            pageBuilder.setDouble(column, value);
+        }
+
+        @Override
+        public String toString()
+        {
+            return Double.toString(value);
+        }
+    }
+
+    private static class TimestampValue
+            extends ResolvedDefaultValue
+    {
+        private final Timestamp value;
+
+        TimestampValue(Timestamp value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        void setTo(PageBuilder pageBuilder, Column column)
+        {
+            pageBuilder.setTimestamp(column, value);
+        }
+
+        @Override
+        public String toString()
+        {
+            return value.toString();
+        }
+    }
+
+    private static class JsonValue
+            extends ResolvedDefaultValue
+    {
+        private final Value value;
+
+        JsonValue(Value value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        void setTo(PageBuilder pageBuilder, Column column)
+        {
+            pageBuilder.setJson(column, value);
+        }
+
+        @Override
+        public String toString()
+        {
+            return value.toJson();
+        }
+    }
+
+    private static class NullValue
+            extends ResolvedDefaultValue
+    {
+        @Override
+        void setTo(PageBuilder pageBuilder, Column column)
+        {
+            pageBuilder.setNull(column);
+        }
+
+        @Override
+        boolean isNull()
+        {
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "null";
+        }
+    }
+}
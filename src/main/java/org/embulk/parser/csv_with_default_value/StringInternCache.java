@@ -0,0 +1,124 @@
+package org.embulk.parser.csv_with_default_value;
+
+/**
+ * Shares one String instance among equal values of a string column. A value is looked up
+ * from its characters, so a String is created only for a value that is not in the cache.
+ * Values are added until the cache holds {@code maxEntries} values or about {@code maxBytes}
+ * bytes, and are never evicted, so the cache suits columns with a small set of values.
+ * Not thread-safe.
+ */
+final class StringInternCache
+{
+    // longer values are not cached. they are unlikely to repeat
+    static final int MAX_VALUE_LENGTH = 256;
+    // approximate heap size of an entry other than its characters: the entry, a char[] and a String
+    static final int ENTRY_OVERHEAD = 96;
+
+    private static final class Entry
+    {
+        private final int hash;
+        private final boolean rawBytes;
+        private final char[] key;  // characters as returned by charAt of the token
+        private final String value;
+        private final Entry next;
+
+        Entry(int hash, boolean rawBytes, char[] key, String value, Entry next)
+        {
+            this.hash = hash;
+            this.rawBytes = rawBytes;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        boolean matches(CharSequence s)
+        {
+            if (key.length != s.length()) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Entry[] table;
+    private int size = 0;
+    private long bytes = 0;
+
+    StringInternCache(int maxEntries, long maxBytes)
+    {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        // every entry takes at least ENTRY_OVERHEAD bytes, so maxBytes also limits the number of entries
+        long entries = Math.min(maxEntries, maxBytes / ENTRY_OVERHEAD);
+        int capacity = Integer.highestOneBit((int) Math.min(Math.max(entries, 1), 1 << 24) * 2 - 1) * 2;  // load factor <= 0.5
+        this.table = new Entry[capacity];
+    }
+
+    /**
+     * @return a String equal to the value, shared with the previous equal values if it is cached
+     */
+    String intern(CharSequence value)
+    {
+        int length = value.length();
+        if (length > MAX_VALUE_LENGTH) {
+            return value.toString();
+        }
+        int hash = 0;
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            hash = 31 * hash + c;
+            ascii &= c < 0x80;
+        }
+        // non-ASCII characters of a ByteLine are undecoded bytes, which must not match decoded characters
+        boolean rawBytes = !ascii && isByteLine(value);
+
+        int index = (hash ^ (hash >>> 16)) & (table.length - 1);
+        for (Entry entry = table[index]; entry != null; entry = entry.next) {
+            if (entry.hash == hash && entry.rawBytes == rawBytes && entry.matches(value)) {
+                return entry.value;
+            }
+        }
+
+        String string = value.toString();
+        long entryBytes = ENTRY_OVERHEAD + length * 4L;  // the key and the String
+        if (size < maxEntries && bytes + entryBytes <= maxBytes) {
+            char[] key = new char[length];
+            for (int i = 0; i < length; i++) {
+                key[i] = value.charAt(i);
+            }
+            table[index] = new Entry(hash, rawBytes, key, string, table[index]);
+            size++;
+            bytes += entryBytes;
+        }
+        return string;
+    }
+
+    private static boolean isByteLine(CharSequence value)
+    {
+        return value instanceof ByteLine
+                || (value instanceof ColumnToken && ((ColumnToken) value).getSource() instanceof ByteLine);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    long getBytes()
+    {
+        return bytes;
+    }
+
+    int getTableSize()
+    {
+        return table.length;
+    }
+}
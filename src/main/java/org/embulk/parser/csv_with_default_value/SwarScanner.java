@@ -0,0 +1,103 @@
+package org.embulk.parser.csv_with_default_value;
+
+/**
+ * Finds the first of two bytes in a byte array by testing 8 bytes at a time
+ * ("SIMD within a register"). For each 64-bit word w and pattern p (the byte repeated 8 times),
+ * {@code x = w ^ p} has a zero byte where w has the byte, and
+ * {@code (x - 0x01..01) & ~x & 0x80..80} has the high bit set in the lowest such byte.
+ *
+ * Words are assembled from bytes in little endian order, which the JIT compiles to plain loads
+ * and shifts on any platform. The bytes after the last full word are compared one by one.
+ */
+final class SwarScanner
+{
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private SwarScanner()
+    {
+    }
+
+    // the 8 bytes from the index as a little endian word, so the lowest byte comes first
+    private static long getLong(byte[] bytes, int i)
+    {
+        return (bytes[i] & 0xffL)
+                | (bytes[i + 1] & 0xffL) << 8
+                | (bytes[i + 2] & 0xffL) << 16
+                | (bytes[i + 3] & 0xffL) << 24
+                | (bytes[i + 4] & 0xffL) << 32
+                | (bytes[i + 5] & 0xffL) << 40
+                | (bytes[i + 6] & 0xffL) << 48
+                | (bytes[i + 7] & 0xffL) << 56;
+    }
+
+    static long pattern(char c)
+    {
+        return (c & 0xffL) * ONES;
+    }
+
+    /**
+     * @return the index of the first byte in [from, to) that matches pattern1 or pattern2, or to if none
+     */
+    static int indexOf(byte[] bytes, int from, int to, long pattern1, long pattern2)
+    {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = getLong(bytes, i);
+            long x1 = word ^ pattern1;
+            long x2 = word ^ pattern2;
+            long found = ((x1 - ONES) & ~x1 | (x2 - ONES) & ~x2) & HIGH_BITS;
+            if (found != 0) {
+                // false positives are possible only above the first match
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        return indexOfByteByByte(bytes, i, to, pattern1, pattern2);
+    }
+
+    /**
+     * @return the index of the first byte in [from, to) that matches any of the patterns, or to if none
+     */
+    static int indexOf(byte[] bytes, int from, int to, long pattern1, long pattern2, long pattern3)
+    {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = getLong(bytes, i);
+            long x1 = word ^ pattern1;
+            long x2 = word ^ pattern2;
+            long x3 = word ^ pattern3;
+            long found = ((x1 - ONES) & ~x1 | (x2 - ONES) & ~x2 | (x3 - ONES) & ~x3) & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        return indexOfByteByByte(bytes, i, to, pattern1, pattern2, pattern3);
+    }
+
+    static int indexOfByteByByte(byte[] bytes, int from, int to, long pattern1, long pattern2, long pattern3)
+    {
+        byte b1 = (byte) pattern1;
+        byte b2 = (byte) pattern2;
+        byte b3 = (byte) pattern3;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b == b1 || b == b2 || b == b3) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    static int indexOfByteByByte(byte[] bytes, int from, int to, long pattern1, long pattern2)
+    {
+        byte b1 = (byte) pattern1;
+        byte b2 = (byte) pattern2;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b == b1 || b == b2) {
+                return i;
+            }
+        }
+        return to;
+    }
+}
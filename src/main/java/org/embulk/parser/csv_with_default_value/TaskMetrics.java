@@ -0,0 +1,227 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Column;
+import org.embulk.spi.FileInput;
+import org.embulk.spi.Schema;
+import org.slf4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metrics of a task: bytes and lines read, and the {@link ParserMetrics} and {@link DirtyDataReport}
+ * of each {@link ColumnConversionPlan} of the task (one per thread with {@code parser_threads}).
+ * It is registered as a JMX MBean while the task runs, and the totals are logged by
+ * {@link #logSummary()} because {@code ParserPlugin.run} does not return a task report.
+ */
+class TaskMetrics
+        implements TaskMetricsMXBean, AutoCloseable
+{
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private final Schema schema;
+    private final Logger log;
+    private final List<ColumnConversionPlan> plans = new CopyOnWriteArrayList<>();
+    private ObjectName name = null;  // null if not registered
+    private volatile PooledPageAllocator pagePool = null;  // null if page_pool_size and page_size are not set
+    // updated by the thread that reads the input
+    private long bytes = 0;
+    private long lines = 0;
+
+    private TaskMetrics(Schema schema, Logger log)
+    {
+        this.schema = schema;
+        this.log = log;
+    }
+
+    static TaskMetrics start(Schema schema, Logger log)
+    {
+        TaskMetrics metrics = new TaskMetrics(schema, log);
+        try {
+            ObjectName name = new ObjectName("org.embulk.parser.csv_with_default_value:type=TaskMetrics,name=task-" + SEQUENCE.incrementAndGet());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(metrics, name);
+            metrics.name = name;
+        } catch (JMException ex) {
+            log.warn("Metrics are not registered as an MBean", ex);
+        }
+        return metrics;
+    }
+
+    void add(ColumnConversionPlan plan)
+    {
+        plans.add(plan);
+    }
+
+    void setPagePool(PooledPageAllocator pagePool)
+    {
+        this.pagePool = pagePool;
+    }
+
+    FileInput countBytes(final FileInput input)
+    {
+        return new FileInput()
+        {
+            public boolean nextFile()
+            {
+                return input.nextFile();
+            }
+
+            public Buffer poll()
+            {
+                Buffer buffer = input.poll();
+                if (buffer != null) {
+                    bytes += buffer.limit();
+                }
+                return buffer;
+            }
+
+            public void close()
+            {
+                input.close();
+            }
+        };
+    }
+
+    LineSource countLines(final LineSource source)
+    {
+        return new LineSource()
+        {
+            @Override
+            boolean nextFile()
+            {
+                return source.nextFile();
+            }
+
+            @Override
+            CharSequence poll()
+            {
+                CharSequence line = source.poll();
+                if (line != null) {
+                    lines++;
+                }
+                return line;
+            }
+
+            @Override
+            public void close()
+            {
+                source.close();
+            }
+        };
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return bytes;
+    }
+
+    @Override
+    public long getLinesRead()
+    {
+        return lines;
+    }
+
+    @Override
+    public long getRecordsEmitted()
+    {
+        long records = 0;
+        for (ColumnConversionPlan plan : plans) {
+            records += plan.getMetrics().getRecords();
+        }
+        return records;
+    }
+
+    @Override
+    public Map<String, Long> getRecordsSkipped()
+    {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ColumnConversionPlan plan : plans) {
+            plan.getMetrics().addSkippedRecordsTo(counts);
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getDefaultsApplied()
+    {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Column column : schema.getColumns()) {
+            long count = 0;
+            for (ColumnConversionPlan plan : plans) {
+                count += plan.getReport().getDefaultsApplied(column.getIndex()) + plan.getReport().getBadTokens(column.getIndex());
+            }
+            counts.put(column.getName(), count);
+        }
+        return counts;
+    }
+
+    @Override
+    public long getMultiLineValues()
+    {
+        long values = 0;
+        for (ColumnConversionPlan plan : plans) {
+            values += plan.getMetrics().getMultiLineValues();
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getConversionNanosPerValue()
+    {
+        Map<String, long[]> times = new LinkedHashMap<>();
+        for (ColumnConversionPlan plan : plans) {
+            plan.getMetrics().addConversionTimesTo(times);
+        }
+        Map<String, Double> nanos = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> time : times.entrySet()) {
+            if (time.getValue()[1] > 0) {
+                nanos.put(time.getKey(), (double) time.getValue()[0] / time.getValue()[1]);
+            }
+        }
+        return nanos;
+    }
+
+    @Override
+    public double getPagePoolHitRate()
+    {
+        PooledPageAllocator pagePool = this.pagePool;
+        return pagePool != null ? pagePool.getHitRate() : 0.0;
+    }
+
+    void logSummary()
+    {
+        StringBuilder sb = new StringBuilder();
+        if (pagePool != null) {
+            sb.append(String.format("%n  page pool hit rate: %.3f", getPagePoolHitRate()));
+        }
+        for (Map.Entry<String, Double> nanos : getConversionNanosPerValue().entrySet()) {
+            sb.append(String.format("%n  %s: %.1f ns/value", nanos.getKey(), nanos.getValue()));
+        }
+        log.info(String.format("csv_with_default_value metrics: bytes=%d, lines=%d, records=%d, skipped records=%s, multi-line values=%d%s",
+                    getBytesRead(), getLinesRead(), getRecordsEmitted(), getRecordsSkipped(), getMultiLineValues(), sb));
+    }
+
+    @Override
+    public void close()
+    {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException ex) {
+                log.warn("Failed to unregister metrics", ex);
+            }
+            name = null;
+        }
+    }
+}
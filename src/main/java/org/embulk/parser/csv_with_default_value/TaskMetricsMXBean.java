@@ -0,0 +1,38 @@
+package org.embulk.parser.csv_with_default_value;
+
+import java.util.Map;
+
+/**
+ * Live metrics of a running task, registered while the task runs if {@code metrics} is enabled.
+ */
+public interface TaskMetricsMXBean
+{
+    long getBytesRead();
+
+    long getLinesRead();
+
+    long getRecordsEmitted();
+
+    /**
+     * @return number of skipped records by the simple name of the exception class
+     */
+    Map<String, Long> getRecordsSkipped();
+
+    /**
+     * @return number of applied default values by column name
+     */
+    Map<String, Long> getDefaultsApplied();
+
+    long getMultiLineValues();
+
+    /**
+     * @return average nanoseconds to convert a value by column type, sampled from 1 of
+     *         {@value ParserMetrics#SAMPLE_INTERVAL} records
+     */
+    Map<String, Double> getConversionNanosPerValue();
+
+    /**
+     * @return rate of pages reused from the pool of {@code page_pool_size}, or 0 if it is not set
+     */
+    double getPagePoolHitRate();
+}
@@ -0,0 +1,66 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.time.Timestamp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache from raw strings to parsed timestamps for one column. Failed parses
+ * are remembered as {@link #FAILURE}. Not thread-safe.
+ */
+final class TimestampCache
+{
+    // compared by identity
+    static final Timestamp FAILURE = Timestamp.ofEpochSecond(0);
+
+    private final Map<String, Timestamp> entries;
+
+    // most recent entry, checked before the map because equal values tend to come in runs
+    private String lastKey;
+    private Timestamp lastValue;
+
+    TimestampCache(final int maxSize)
+    {
+        this.entries = new LinkedHashMap<String, Timestamp>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Timestamp> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached timestamp, {@link #FAILURE}, or null if the value is not cached
+     */
+    Timestamp get(String value)
+    {
+        if (value.equals(lastKey)) {
+            return lastValue;
+        }
+        Timestamp cached = entries.get(value);
+        if (cached != null) {
+            lastKey = value;
+            lastValue = cached;
+        }
+        return cached;
+    }
+
+    void put(String value, Timestamp timestamp)
+    {
+        entries.put(value, timestamp);
+        lastKey = value;
+        lastValue = timestamp;
+    }
+
+    void putFailure(String value)
+    {
+        put(value, FAILURE);
+    }
+
+    int size()
+    {
+        return entries.size();
+    }
+}
@@ -0,0 +1,84 @@
+package org.embulk.parser.csv_with_default_value;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Set of strings compiled for lookups from a character sequence without creating a String.
+ * Candidates are bucketed by length so that a lookup is a length check plus a few char comparisons.
+ */
+final class TokenMatcher
+{
+    private static final char[][] NO_CANDIDATES = new char[0][];
+
+    private final char[][][] candidatesByLength;
+
+    private TokenMatcher(char[][][] candidatesByLength)
+    {
+        this.candidatesByLength = candidatesByLength;
+    }
+
+    static TokenMatcher of(Collection<String> strings)
+    {
+        int maxLength = 0;
+        for (String s : strings) {
+            maxLength = Math.max(maxLength, s.length());
+        }
+
+        List<List<char[]>> buckets = new ArrayList<>();
+        for (int i = 0; i <= maxLength; i++) {
+            buckets.add(new ArrayList<char[]>());
+        }
+        for (String s : strings) {
+            List<char[]> bucket = buckets.get(s.length());
+            boolean duplicated = false;
+            for (char[] c : bucket) {
+                duplicated |= new String(c).equals(s);
+            }
+            if (!duplicated) {
+                bucket.add(s.toCharArray());
+            }
+        }
+
+        char[][][] candidatesByLength = new char[maxLength + 1][][];
+        for (int i = 0; i <= maxLength; i++) {
+            List<char[]> bucket = buckets.get(i);
+            candidatesByLength[i] = bucket.isEmpty() ? NO_CANDIDATES : bucket.toArray(new char[bucket.size()][]);
+        }
+        return new TokenMatcher(candidatesByLength);
+    }
+
+    boolean isEmpty()
+    {
+        for (char[][] candidates : candidatesByLength) {
+            if (candidates.length > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean matches(CharSequence s)
+    {
+        return matches(s, 0, s.length());
+    }
+
+    boolean matches(CharSequence s, int start, int end)
+    {
+        int length = end - start;
+        if (length >= candidatesByLength.length) {
+            return false;
+        }
+        for (char[] candidate : candidatesByLength[length]) {
+            int i = 0;
+            while (i < length && candidate[i] == s.charAt(start + i)) {
+                i++;
+            }
+            if (i == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+package org.embulk.parser.csv_with_default_value;
+
+/**
+ * Cheap checks that tell a value is certainly invalid before it is given to a parser that
+ * throws an exception on invalid values. A value that passes a check may still be invalid.
+ */
+final class ValueSyntax
+{
+    // characters of decimal and hexadecimal doubles, NaN, Infinity and the d and f suffixes
+    private static final String DOUBLE_CHARS = "+-.0123456789aAbBcCdDeEfFxXpPNIinty";
+    private static final String JSON_FIRST_CHARS = "{[\"+-0123456789tfnNI";
+
+    private ValueSyntax()
+    {
+    }
+
+    /**
+     * @return false if {@link Double#parseDouble(String)} certainly fails
+     */
+    static boolean mayBeDouble(CharSequence s)
+    {
+        boolean digitOrName = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c <= ' ') {
+                continue;  // trimmed by parseDouble
+            }
+            if (DOUBLE_CHARS.indexOf(c) < 0) {
+                return false;
+            }
+            digitOrName |= (c >= '0' && c <= '9') || c == 'N' || c == 'I';
+        }
+        return digitOrName;
+    }
+
+    /**
+     * @return false if the value has no digit, which every timestamp has
+     */
+    static boolean mayBeTimestamp(CharSequence s)
+    {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c >= '0' && c <= '9') || (c >= 0x80 && Character.isDigit(c))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false if the value does not start with a JSON value
+     */
+    static boolean mayBeJson(CharSequence s)
+    {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c > ' ') {
+                return JSON_FIRST_CHARS.indexOf(c) >= 0;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class AdaptiveParseStrategyTest {
+
+    private final Column doubleCol = new Column(0, "doubleCol", Types.DOUBLE);
+    private final Schema schema = new Schema(ImmutableList.of(doubleCol));
+
+    @Test
+    public void testSwitchesWithFailureRate(){
+        DirtyDataReport report = new DirtyDataReport(schema, 0, mock(Logger.class));
+        AdaptiveParseStrategy strategy = new AdaptiveParseStrategy(doubleCol, report);
+
+        assertFalse(strategy.validateFirst());
+        for (int i = 0; i < AdaptiveParseStrategy.VALIDATE_THRESHOLD; i++) {
+            strategy.failed();
+        }
+        assertFalse(strategy.validateFirst());
+        strategy.failed();
+        assertTrue(strategy.validateFirst());
+
+        // failures stay in the window until WINDOW values are recorded after them
+        for (int i = 0; i < AdaptiveParseStrategy.WINDOW - AdaptiveParseStrategy.VALIDATE_THRESHOLD - 1; i++) {
+            strategy.succeeded();
+        }
+        assertTrue(strategy.validateFirst());
+        for (int i = 0; i < AdaptiveParseStrategy.VALIDATE_THRESHOLD + 1 - AdaptiveParseStrategy.OPTIMISTIC_THRESHOLD; i++) {
+            strategy.succeeded();
+        }
+        assertTrue(strategy.validateFirst());
+        strategy.succeeded();
+        assertFalse(strategy.validateFirst());
+
+        assertEquals(2, report.getStrategySwitches(0));
+        assertEquals(0, report.getValidationRejected(0));
+    }
+
+    @Test
+    public void testRejectedCountsAsFailure(){
+        DirtyDataReport report = new DirtyDataReport(schema, 0, mock(Logger.class));
+        AdaptiveParseStrategy strategy = new AdaptiveParseStrategy(doubleCol, report);
+
+        for (int i = 0; i <= AdaptiveParseStrategy.VALIDATE_THRESHOLD; i++) {
+            strategy.failed();
+        }
+        strategy.rejected();
+        strategy.rejected();
+
+        assertTrue(strategy.validateFirst());
+        assertEquals(2, report.getValidationRejected(0));
+        assertEquals(1, report.getStrategySwitches(0));
+    }
+}
@@ -0,0 +1,68 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class DirtyDataReportTest {
+
+    private final Column longCol = new Column(0, "longCol", Types.LONG);
+    private final Column doubleCol = new Column(1, "doubleCol", Types.DOUBLE);
+    private final Schema schema = new Schema(ImmutableList.of(longCol, doubleCol));
+
+    @Test
+    public void testCountsEverythingButLogsOnlySamples(){
+        Logger log = mock(Logger.class);
+        DirtyDataReport report = new DirtyDataReport(schema, 2, log);
+
+        for (int i = 0; i < 5; i++) {
+            report.defaultApplied(longCol, "N/A");
+        }
+        report.defaultApplied(doubleCol, "-");
+        report.nullValue(doubleCol);
+        report.recordRejected(longCol);
+
+        assertEquals(5, report.getDefaultsApplied(0));
+        assertEquals(1, report.getDefaultsApplied(1));
+        assertEquals(1, report.getNulls(1));
+        assertEquals(1, report.getRejected(0));
+        // 2 samples and a suppression notice for longCol, 1 sample for doubleCol
+        verify(log, times(4)).warn(anyString());
+    }
+
+    @Test
+    public void testSkippedLinesAreSampled(){
+        Logger log = mock(Logger.class);
+        DirtyDataReport report = new DirtyDataReport(schema, 0, log);
+
+        report.lineSkipped(0, 1, "a,b", new CsvRecordValidateException(new NumberFormatException()));
+        report.logSummary();
+
+        assertEquals(1, report.getSkippedLines());
+        verify(log, times(1)).warn(anyString());
+    }
+
+    @Test
+    public void testSharedSamples(){
+        Logger log = mock(Logger.class);
+        DirtyDataReport report = new DirtyDataReport(schema, 2, log);
+        DirtyDataReport other = new DirtyDataReport(schema, 2, log);
+        other.shareSamplesWith(report);
+
+        report.defaultApplied(longCol, "N/A");
+        other.defaultApplied(longCol, "N/A");
+        other.defaultApplied(longCol, "N/A");
+
+        assertEquals(1, report.getDefaultsApplied(0));
+        assertEquals(2, other.getDefaultsApplied(0));
+        // 2 samples and a suppression notice in total
+        verify(log, times(3)).warn(anyString());
+    }
+}
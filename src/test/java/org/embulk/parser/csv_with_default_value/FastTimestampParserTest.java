@@ -0,0 +1,62 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.time.Timestamp;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FastTimestampParserTest {
+
+    @Test
+    public void testUnsupportedFormats(){
+        assertNull(FastTimestampParser.compile("%b %d %Y", DateTimeZone.UTC));
+        assertNull(FastTimestampParser.compile("%m/%d", DateTimeZone.UTC));
+        assertNull(FastTimestampParser.compile("%Y-%m-%dT%M", DateTimeZone.UTC));
+        assertNotNull(FastTimestampParser.compile("%Y-%m-%dT%H:%M:%S.%N%z", DateTimeZone.UTC));
+        assertNotNull(FastTimestampParser.compile("%Y/%m/%d", DateTimeZone.UTC));
+    }
+
+    @Test
+    public void testDate(){
+        FastTimestampParser parser = FastTimestampParser.compile("%Y/%m/%d", DateTimeZone.UTC);
+        assertEquals(Timestamp.ofEpochSecond(1456704000L), parser.parse("2016/02/29"));
+        assertEquals(Timestamp.ofEpochSecond(-86400L), parser.parse("1969/12/31"));
+        assertNull(parser.parse("2015/02/29"));
+        assertNull(parser.parse("2016/2/29"));
+        assertNull(parser.parse("2016/02/29 "));
+    }
+
+    @Test
+    public void testDefaultTimeZone(){
+        DateTimeZone zone = DateTimeZone.forID("America/Los_Angeles");
+        FastTimestampParser parser = FastTimestampParser.compile("%Y-%m-%dT%H:%M:%S", zone);
+        assertEquals(seconds(new DateTime(2016, 1, 1, 12, 0, 0, zone)), parser.parse("2016-01-01T12:00:00"));
+        assertEquals(seconds(new DateTime(2016, 7, 1, 12, 0, 0, zone)), parser.parse("2016-07-01T12:00:00"));
+    }
+
+    @Test
+    public void testWhitespace(){
+        FastTimestampParser parser = FastTimestampParser.compile("%Y-%m-%d %H:%M:%S", DateTimeZone.UTC);
+        assertEquals(Timestamp.ofEpochSecond(1451610061L), parser.parse("2016-01-01 01:01:01"));
+        assertNull(parser.parse("2016-01-01  01:01:01"));
+        assertNull(parser.parse("2016-01-01T01:01:01"));
+    }
+
+    @Test
+    public void testFractionAndZone(){
+        FastTimestampParser parser = FastTimestampParser.compile("%Y-%m-%dT%H:%M:%S.%N%z", DateTimeZone.UTC);
+        assertEquals(Timestamp.ofEpochSecond(1451574000L, 123456000L), parser.parse("2016-01-01T00:00:00.123456789+0900"));
+        assertEquals(Timestamp.ofEpochSecond(1451574000L, 500000000L), parser.parse("2016-01-01T00:00:00.5+09:00"));
+        assertEquals(Timestamp.ofEpochSecond(1451626200L), parser.parse("2016-01-01T00:00:00.0-05:30"));
+        assertNull(parser.parse("2016-01-01T00:00:00.+0900"));
+        assertNull(parser.parse("2016-01-01T00:00:00.0 UTC"));
+        assertNull(parser.parse("2016-01-01T24:00:00.0+0900"));
+    }
+
+    private static Timestamp seconds(DateTime dateTime)
+    {
+        return Timestamp.ofEpochSecond(dateTime.getMillis() / 1000);
+    }
+}
@@ -0,0 +1,69 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.spi.json.JsonParseException;
+import org.embulk.spi.json.JsonParser;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonTokenParserTest
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private final JsonTokenParser parser = new JsonTokenParser(StandardCharsets.UTF_8);
+
+    @Test
+    public void testSameAsJsonParser()
+    {
+        JsonParser jsonParser = new JsonParser();
+        for (String json : ImmutableList.of(
+                "{\"a\":1,\"b\":[true,false,null],\"c\":{\"d\":\"\\u3042\"}}",
+                "[1.5,-2,-9223372036854775808,\"x\"]",
+                "\"\u3042\u3044\"",
+                "123",
+                "  {\"k\" : \"v\"}  ")) {
+            assertEquals(json, jsonParser.parse(json), parser.parse(json));
+            assertEquals(json, jsonParser.parse(json), parser.parse(new StringBuilder(json)));
+
+            ColumnToken token = new ColumnToken();
+            token.set("x\t" + json + "\ty", 2, 2 + json.length());
+            assertEquals(json, jsonParser.parse(json), parser.parse(token));
+
+            byte[] bytes = ("x\t" + json + "\ty").getBytes(StandardCharsets.UTF_8);
+            int length = json.getBytes(StandardCharsets.UTF_8).length;
+            token.set(new ByteLine(bytes, 0, bytes.length, StandardCharsets.UTF_8), 2, 2 + length);
+            assertEquals(json, jsonParser.parse(json), parser.parse(token));
+        }
+    }
+
+    @Test
+    public void testInvalidValues()
+    {
+        for (String json : ImmutableList.of("", "{\"a\":", "[1,2", "{} {}", "{\"a\":1}x", "N/A")) {
+            try {
+                parser.parse(json);
+                fail(json);
+            } catch (JsonParseException ex) {
+            }
+        }
+    }
+
+    @Test
+    public void testBytesOfIso88591AreDecoded()
+    {
+        JsonTokenParser latin1 = new JsonTokenParser(StandardCharsets.ISO_8859_1);
+        byte[] bytes = "\"\u00e9\"".getBytes(StandardCharsets.ISO_8859_1);
+        ColumnToken token = new ColumnToken();
+        token.set(new ByteLine(bytes, 0, bytes.length, StandardCharsets.ISO_8859_1), 0, bytes.length);
+        assertTrue(latin1.parse(token).isStringValue());
+        assertEquals("\u00e9", latin1.parse(token).asStringValue().asString());
+    }
+}
@@ -0,0 +1,38 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongParserTest {
+
+    private final LongParser parser = new LongParser();
+
+    @Test
+    public void testValidValues(){
+        for (String s : new String[] {"0", "123", "-123", "+123", "007", "9223372036854775807", "-9223372036854775808"}) {
+            assertTrue(s, parser.tryParse(s));
+            assertEquals(s, Long.parseLong(s), parser.getValue());
+        }
+    }
+
+    @Test
+    public void testInvalidValues(){
+        for (String s : new String[] {"", "-", "+", "N/A", "#VALUE!", "1.0", "1e3", " 1", "1 ", "--1", "9223372036854775808", "-9223372036854775809"}) {
+            assertFalse(s, parser.tryParse(s));
+        }
+    }
+
+    @Test
+    public void testRange(){
+        assertTrue(parser.tryParse("a123b", 1, 4));
+        assertEquals(123L, parser.getValue());
+    }
+
+    @Test
+    public void testNonAsciiDigitsAreAcceptedLikeLongParseLong(){
+        String s = "\u0661\u0662\u0663";
+        assertTrue(parser.tryParse(s));
+        assertEquals(Long.parseLong(s), parser.getValue());
+    }
+}
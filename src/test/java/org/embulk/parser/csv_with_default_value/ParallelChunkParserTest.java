@@ -0,0 +1,99 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigSource;
+import org.embulk.parser.csv_with_default_value.CsvWithDefaultValueParserPlugin.PluginTask;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.BufferAllocator;
+import org.embulk.spi.DataException;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParallelChunkParserTest {
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    // counts buffers of the Exec allocator that are not released
+    private static class TrackingAllocator implements BufferAllocator {
+        final AtomicInteger outstanding = new AtomicInteger();
+
+        @Override
+        public Buffer allocate()
+        {
+            return track(Exec.getBufferAllocator().allocate());
+        }
+
+        @Override
+        public Buffer allocate(int minimumCapacity)
+        {
+            return track(Exec.getBufferAllocator().allocate(minimumCapacity));
+        }
+
+        private Buffer track(final Buffer buffer)
+        {
+            outstanding.incrementAndGet();
+            return new Buffer(buffer.array(), buffer.offset(), buffer.capacity()) {
+                @Override
+                public void release()
+                {
+                    outstanding.decrementAndGet();
+                    buffer.release();
+                }
+            };
+        }
+    }
+
+    @Test
+    public void testReleasesPagesOnError(){
+        ConfigSource config = Exec.newConfigSource()
+                .set("newline", "LF")
+                .set("parser_threads", 2)
+                .set("stop_on_invalid_record", true)
+                .set("columns", ImmutableList.of(ImmutableMap.of("name", "a", "type", "long")));
+        PluginTask task = config.loadConfig(PluginTask.class);
+        Schema schema = ColumnConversionPlan.outputSchema(task.getSchemaConfig());
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append(i).append('\n');
+        }
+        text.append("1,too many\n");
+        for (int i = 0; i < 1000; i++) {
+            text.append(i).append('\n');
+        }
+
+        TrackingAllocator allocator = new TrackingAllocator();
+        try {
+            new ParallelChunkParser(task, schema, null, null, 64).run(TestCsvTokenizer.newFileInputFromText(text.toString()), new PageOutput()
+            {
+                public void add(Page page)
+                {
+                    page.release();
+                }
+
+                public void finish()
+                {
+                }
+
+                public void close()
+                {
+                }
+            }, allocator);
+            fail();
+        } catch (DataException ex) {
+            // expected
+        }
+        assertEquals(0, allocator.outstanding.get());
+    }
+}
@@ -0,0 +1,152 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.spi.DataException;
+import org.embulk.spi.Exec;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PipelinedLineSourceTest
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    // files of the given numbers of lines named "<file>:<line>"
+    private static LineSource newLineSource(final int... lineCounts)
+    {
+        return new LineSource()
+        {
+            private int file = -1;
+            private int line;
+
+            @Override
+            boolean nextFile()
+            {
+                line = 0;
+                return ++file < lineCounts.length;
+            }
+
+            @Override
+            CharSequence poll()
+            {
+                if (line == lineCounts[file]) {
+                    return null;
+                }
+                if (lineCounts[file] < 0) {
+                    throw new DataException("broken file");
+                }
+                return file + ":" + line++;
+            }
+        };
+    }
+
+    @Test
+    public void testSameLinesAsSource()
+    {
+        int[] lineCounts = { 3, 0, PipelinedLineSource.BATCH_SIZE * 3 + 1, PipelinedLineSource.BATCH_SIZE };
+        try (LineSource pipelined = new PipelinedLineSource(newLineSource(lineCounts), Exec.session())) {
+            for (int file = 0; file < lineCounts.length; file++) {
+                assertTrue(pipelined.nextFile());
+                for (int line = 0; line < lineCounts[file]; line++) {
+                    assertEquals(file + ":" + line, pipelined.poll().toString());
+                }
+                assertNull(pipelined.poll());
+                assertNull(pipelined.poll());
+            }
+            assertFalse(pipelined.nextFile());
+        }
+    }
+
+    @Test
+    public void testNextFileSkipsRestOfFile()
+    {
+        int total = PipelinedLineSource.BATCH_COUNT * PipelinedLineSource.BATCH_SIZE * 2;
+        try (LineSource pipelined = new PipelinedLineSource(newLineSource(total, 1), Exec.session())) {
+            assertTrue(pipelined.nextFile());
+            assertEquals("0:0", pipelined.poll().toString());
+            assertTrue(pipelined.nextFile());
+            assertEquals("1:0", pipelined.poll().toString());
+            assertNull(pipelined.poll());
+            assertFalse(pipelined.nextFile());
+        }
+    }
+
+    @Test(expected = DataException.class)
+    public void testErrorOfReaderIsThrown()
+    {
+        try (LineSource pipelined = new PipelinedLineSource(newLineSource(1, -1), Exec.session())) {
+            while (pipelined.nextFile()) {
+                while (pipelined.poll() != null) {
+                }
+            }
+        }
+    }
+
+    // an Error of the reader must reach the consumer instead of leaving it waiting
+    @Test(timeout = 10000, expected = LinkageError.class)
+    public void testErrorOfReaderIsThrownToo()
+    {
+        LineSource broken = new LineSource()
+        {
+            @Override
+            boolean nextFile()
+            {
+                return true;
+            }
+
+            @Override
+            CharSequence poll()
+            {
+                throw new LinkageError("broken decoder");
+            }
+        };
+        try (LineSource pipelined = new PipelinedLineSource(broken, Exec.session())) {
+            while (pipelined.nextFile()) {
+                while (pipelined.poll() != null) {
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCloseBeforeEndOfInput()
+    {
+        LineSource pipelined = new PipelinedLineSource(newLineSource(PipelinedLineSource.BATCH_COUNT * PipelinedLineSource.BATCH_SIZE * 4), Exec.session());
+        assertTrue(pipelined.nextFile());
+        assertEquals("0:0", pipelined.poll().toString());
+        pipelined.close();  // doesn't block
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseDoesNotWaitForBlockedInput()
+    {
+        final CountDownLatch unblock = new CountDownLatch(1);
+        LineSource blocked = new LineSource()
+        {
+            @Override
+            boolean nextFile()
+            {
+                return true;
+            }
+
+            @Override
+            CharSequence poll()
+            {
+                // ignores interrupts like a stalled remote input
+                Uninterruptibles.awaitUninterruptibly(unblock);
+                return null;
+            }
+        };
+        LineSource pipelined = new PipelinedLineSource(blocked, Exec.session(), 100);
+        pipelined.close();
+        unblock.countDown();
+    }
+}
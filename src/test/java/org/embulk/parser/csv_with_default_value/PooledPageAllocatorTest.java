@@ -0,0 +1,121 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.BufferAllocator;
+import org.embulk.spi.Exec;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PooledPageAllocatorTest {
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static class CountingAllocator implements BufferAllocator {
+        int allocated = 0;
+        int releases = 0;
+
+        @Override
+        public Buffer allocate()
+        {
+            return allocate(64);
+        }
+
+        @Override
+        public Buffer allocate(int minimumCapacity)
+        {
+            allocated++;
+            return new Buffer(new byte[minimumCapacity], 0, minimumCapacity) {
+                @Override
+                public void release()
+                {
+                    releases++;
+                }
+            };
+        }
+    }
+
+    @Test
+    public void testReusesReleasedPages(){
+        CountingAllocator exec = new CountingAllocator();
+        PooledPageAllocator pool = new PooledPageAllocator(exec, 128, 2, mock(Logger.class));
+
+        Buffer first = pool.allocate();
+        assertEquals(128, first.capacity());
+        first.limit(10);
+        first.release();
+        first.release();  // ignored
+
+        Buffer second = pool.allocate();
+        assertSame(first, second);
+        assertEquals(128, second.limit());
+        Buffer third = pool.allocate();
+        assertNotSame(second, third);
+
+        assertEquals(2, exec.allocated);
+        assertEquals(3, pool.getAllocations());
+        assertEquals(1, pool.getHits());
+
+        second.release();
+        third.release();
+        pool.close();
+        assertEquals(2, exec.releases);
+    }
+
+    @Test
+    public void testKeepsAtMostMaxPooledPages(){
+        CountingAllocator exec = new CountingAllocator();
+        PooledPageAllocator pool = new PooledPageAllocator(exec, 0, 1, mock(Logger.class));
+
+        Buffer a = pool.allocate();
+        Buffer b = pool.allocate();
+        Buffer c = pool.allocate();
+        assertEquals(64, pool.getPageSize());
+        a.release();
+        b.release();
+        assertEquals(1, exec.releases);
+
+        pool.close();
+        assertEquals(2, exec.releases);
+        // released after close
+        c.release();
+        assertEquals(3, exec.releases);
+    }
+
+    @Test
+    public void testPassesThroughLargerBuffers(){
+        CountingAllocator exec = new CountingAllocator();
+        PooledPageAllocator pool = new PooledPageAllocator(exec, 128, 2, mock(Logger.class));
+
+        Buffer small = pool.allocate(100);
+        assertEquals(128, small.capacity());
+
+        Buffer large = pool.allocate(1024);
+        assertEquals(1024, large.capacity());
+        large.release();
+        assertEquals(1, exec.releases);
+        assertEquals(1, pool.getAllocations());
+        assertEquals(0.0, pool.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void testReusesPagesOfExecAllocator(){
+        // the Exec allocator rounds page_size up to its own page size
+        PooledPageAllocator pool = new PooledPageAllocator(Exec.getBufferAllocator(), 256, 2, mock(Logger.class));
+
+        Buffer first = pool.allocate();
+        assertTrue(first.capacity() >= 256);
+        assertEquals(first.capacity(), pool.getPageSize());
+        first.release();
+        Buffer second = pool.allocate();
+        second.release();
+
+        assertTrue(pool.getHits() > 0);
+        pool.close();
+    }
+}
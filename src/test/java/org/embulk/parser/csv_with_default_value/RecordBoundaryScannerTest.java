@@ -0,0 +1,84 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigSource;
+import org.embulk.spi.Exec;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordBoundaryScannerTest
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private ConfigSource config;
+
+    @Before
+    public void setUp()
+    {
+        config = Exec.newConfigSource()
+                .set("columns", ImmutableList.of(
+                        ImmutableMap.of("name", "c1", "type", "string"),
+                        ImmutableMap.of("name", "c2", "type", "string")));
+    }
+
+    private RecordBoundaryScanner newScanner()
+    {
+        return new RecordBoundaryScanner(config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class));
+    }
+
+    @Test
+    public void testLinesWithoutQuotedNewline()
+    {
+        RecordBoundaryScanner scanner = newScanner();
+        assertTrue(scanner.endsRecord("a,b"));
+        assertTrue(scanner.endsRecord(""));
+        assertTrue(scanner.endsRecord("\"a,b\",\"c\"\"\""));
+        assertTrue(scanner.endsRecord("a\"b,c\""));  // quotes in the middle of a value are not special
+        assertTrue(scanner.endsRecord(" \"a,b"));
+    }
+
+    @Test
+    public void testQuotedNewline()
+    {
+        RecordBoundaryScanner scanner = newScanner();
+        assertFalse(scanner.endsRecord("a,\"b"));
+        assertFalse(scanner.endsRecord(""));
+        assertFalse(scanner.endsRecord("c\"\",d"));
+        assertTrue(scanner.endsRecord("e\""));
+
+        assertFalse(scanner.endsRecord("\"a\\\""));  // escaped quote
+        assertTrue(scanner.endsRecord("\",b"));
+
+        assertFalse(scanner.endsRecord("\"a\",\"b"));
+        scanner.reset();
+        assertTrue(scanner.endsRecord("a,b"));
+    }
+
+    @Test
+    public void testCommentLineAndTrim()
+    {
+        config.set("comment_line_marker", "#").set("trim_if_not_quoted", true).set("delimiter", "::");
+        RecordBoundaryScanner scanner = newScanner();
+        assertTrue(scanner.endsRecord("#\"a"));
+        assertTrue(scanner.endsRecord("a:\"b"));
+        assertFalse(scanner.endsRecord("a::  \"b"));
+        assertTrue(scanner.endsRecord("#\""));
+    }
+
+    @Test
+    public void testQuotedValueLongerThanLimitEndsAtLine()
+    {
+        config.set("max_quoted_size_limit", 10);
+        RecordBoundaryScanner scanner = newScanner();
+        assertFalse(scanner.endsRecord("\"abc"));
+        assertTrue(scanner.endsRecord("defghijklmn"));
+        assertTrue(scanner.endsRecord("a,b"));
+    }
+}
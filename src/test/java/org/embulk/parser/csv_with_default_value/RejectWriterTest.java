@@ -0,0 +1,135 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.embulk.parser.csv_with_default_value.CsvWithDefaultValueParserPlugin.RejectsFormat;
+import org.embulk.spi.DataException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RejectWriterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String pathPrefix()
+    {
+        return folder.getRoot().toPath().resolve("rejects").toString();
+    }
+
+    @Test
+    public void testCsv() throws Exception
+    {
+        RejectWriter writer = RejectWriter.open(pathPrefix(), RejectsFormat.CSV);
+        writer.add(0, 3, "a,\"b\"", new CsvTokenizer.InvalidValueException("unexpected \"quote\""));
+        writer.add(1, 10, "x", new NumberFormatException());
+        writer.close();
+
+        assertTrue(writer.getPath().toString().endsWith(".csv"));
+        assertEquals(ImmutableList.of(
+                "file_index,line_number,exception,message,line",
+                "0,3,\"org.embulk.parser.csv_with_default_value.CsvTokenizer$InvalidValueException\",\"unexpected \"\"quote\"\"\",\"a,\"\"b\"\"\"",
+                "1,10,\"java.lang.NumberFormatException\",,\"x\""),
+                Files.readAllLines(writer.getPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testNextRunDoesNotOverwrite() throws Exception
+    {
+        // each run of a JVM counts from 0
+        RejectWriter first = RejectWriter.open(pathPrefix(), RejectsFormat.CSV, new AtomicInteger());
+        first.add(0, 1, "first", new NumberFormatException());
+        first.close();
+        RejectWriter second = RejectWriter.open(pathPrefix(), RejectsFormat.CSV, new AtomicInteger());
+        second.add(0, 1, "second", new NumberFormatException());
+        second.close();
+
+        assertTrue(first.getPath().toString().endsWith("rejects.000.csv"));
+        assertTrue(second.getPath().toString().endsWith("rejects.001.csv"));
+        assertEquals("0,1,\"java.lang.NumberFormatException\",,\"first\"",
+                Files.readAllLines(first.getPath(), StandardCharsets.UTF_8).get(1));
+    }
+
+    @Test
+    public void testJsonLinesFromThreads() throws Exception
+    {
+        final RejectWriter writer = RejectWriter.open(pathPrefix(), RejectsFormat.JSONL);
+        final int rejectsPerThread = RejectWriter.BATCH_SIZE * RejectWriter.BATCH_COUNT;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int fileIndex = i;
+            threads.add(new Thread()
+            {
+                public void run()
+                {
+                    for (int line = 1; line <= rejectsPerThread; line++) {
+                        writer.add(fileIndex, line, "line\n" + line, new CsvRecordValidateException(new NumberFormatException("bad")));
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close();
+
+        assertTrue(writer.getPath().toString().endsWith(".jsonl"));
+        ObjectMapper mapper = new ObjectMapper();
+        long[] lastLineNumbers = new long[threads.size()];
+        List<String> lines = Files.readAllLines(writer.getPath(), StandardCharsets.UTF_8);
+        assertEquals(rejectsPerThread * threads.size(), lines.size());
+        for (String line : lines) {
+            JsonNode reject = mapper.readTree(line);
+            int fileIndex = reject.get("file_index").asInt();
+            long lineNumber = reject.get("line_number").asLong();
+            // rejects of a thread are written in order
+            assertEquals(lastLineNumbers[fileIndex] + 1, lineNumber);
+            lastLineNumbers[fileIndex] = lineNumber;
+            assertEquals(CsvRecordValidateException.class.getName(), reject.get("exception").asText());
+            assertEquals("line\n" + lineNumber, reject.get("line").asText());
+        }
+    }
+
+    // a failing formatter must not make add() wait for the dead writer
+    @Test(timeout = 10000)
+    public void testRuntimeExceptionOfFormatter() throws Exception
+    {
+        StringWriter out = new StringWriter()
+        {
+            @Override
+            public void write(String str, int off, int len)
+            {
+                if (str.startsWith("boom", off)) {
+                    throw new IllegalStateException("boom");
+                }
+                super.write(str, off, len);
+            }
+        };
+        RejectWriter writer = new RejectWriter(folder.getRoot().toPath().resolve("rejects.csv"), out, RejectsFormat.CSV);
+        for (int line = 1; line <= RejectWriter.BATCH_SIZE * (RejectWriter.BATCH_COUNT + 2); line++) {
+            writer.add(0, line, "boom", new NumberFormatException());
+        }
+        try {
+            writer.close();
+            fail();
+        } catch (DataException ex) {
+            assertEquals(IllegalStateException.class, ex.getCause().getClass());
+        }
+    }
+}
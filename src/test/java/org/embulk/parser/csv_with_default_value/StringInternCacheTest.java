@@ -0,0 +1,70 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class StringInternCacheTest {
+
+    private static ByteLine byteLine(String s){
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        return new ByteLine(bytes, 0, bytes.length, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSharesEqualValues(){
+        StringInternCache cache = new StringInternCache(10, 1024 * 1024);
+        String first = cache.intern(new StringBuilder("JP"));
+        String second = cache.intern(new StringBuilder("JP"));
+        String other = cache.intern(new StringBuilder("US"));
+
+        assertEquals("JP", first);
+        assertSame(first, second);
+        assertEquals("US", other);
+        assertSame(first, cache.intern(byteLine("JP")));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testUndecodedBytesDoNotMatchDecodedCharacters(){
+        StringInternCache cache = new StringInternCache(10, 1024 * 1024);
+        String decoded = "\u00c3\u00a9";  // chars of the UTF-8 bytes of "\u00e9"
+        ByteLine bytes = byteLine("\u00e9");
+
+        assertEquals(decoded, cache.intern(new StringBuilder(decoded)));
+        assertEquals("\u00e9", cache.intern(bytes));
+        assertSame(cache.intern(bytes), cache.intern(bytes));
+        assertEquals(decoded, cache.intern(new StringBuilder(decoded)));
+    }
+
+    @Test
+    public void testBoundedByEntriesAndBytes(){
+        StringInternCache cache = new StringInternCache(2, 1024 * 1024);
+        cache.intern("a");
+        cache.intern("b");
+        String c = cache.intern(new StringBuilder("c"));
+        assertEquals(2, cache.size());
+        assertNotSame(c, cache.intern(new StringBuilder("c")));
+
+        cache = new StringInternCache(100, StringInternCache.ENTRY_OVERHEAD + 4 * 2);
+        cache.intern("ab");
+        cache.intern("cd");
+        assertEquals(1, cache.size());
+        assertEquals(StringInternCache.ENTRY_OVERHEAD + 4 * 2, cache.getBytes());
+
+        String longValue = new String(new char[StringInternCache.MAX_VALUE_LENGTH + 1]).replace('\0', 'x');
+        cache = new StringInternCache(100, 1024 * 1024);
+        assertEquals(longValue, cache.intern(longValue));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testTableIsSizedByMaxBytes(){
+        // at most 1048576 / 96 = 10922 entries fit in 1MB
+        StringInternCache cache = new StringInternCache(10000000, 1024 * 1024);
+        assertEquals(32768, cache.getTableSize());
+        assertEquals(32, new StringInternCache(10, 1024 * 1024).getTableSize());
+    }
+}
@@ -0,0 +1,48 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SwarScannerTest
+{
+    @Test
+    public void testIndexOf()
+    {
+        byte[] bytes = "abc,def ghi,,\u00e9\u3042xyz0123456789,".getBytes(StandardCharsets.UTF_8);
+        long comma = SwarScanner.pattern(',');
+        long space = SwarScanner.pattern(' ');
+        assertEquals(3, SwarScanner.indexOf(bytes, 0, bytes.length, comma, comma));
+        assertEquals(7, SwarScanner.indexOf(bytes, 4, bytes.length, comma, space));
+        assertEquals(11, SwarScanner.indexOf(bytes, 8, bytes.length, comma, space));
+        assertEquals(bytes.length - 1, SwarScanner.indexOf(bytes, 13, bytes.length, comma, space));
+        assertEquals(20, SwarScanner.indexOf(bytes, 13, 20, comma, space));
+    }
+
+    @Test
+    public void testSameAsByteByByte()
+    {
+        Random random = new Random(0);
+        byte[] candidates = { 'a', 'b', ',', '\n', '\r', (byte) 0x80, (byte) 0xac, (byte) 0xff, 0 };
+        long[] patterns = { SwarScanner.pattern(','), SwarScanner.pattern('\n'), SwarScanner.pattern('\r'), SwarScanner.pattern('\0') };
+        for (int n = 0; n < 2000; n++) {
+            byte[] bytes = new byte[random.nextInt(40)];
+            for (int i = 0; i < bytes.length; i++) {
+                // mostly plain bytes
+                bytes[i] = random.nextInt(8) == 0 ? candidates[random.nextInt(candidates.length)] : (byte) ('a' + random.nextInt(26));
+            }
+            long p1 = patterns[random.nextInt(patterns.length)];
+            long p2 = patterns[random.nextInt(patterns.length)];
+            long p3 = patterns[random.nextInt(patterns.length)];
+            for (int from = 0; from <= bytes.length; from++) {
+                assertEquals(SwarScanner.indexOfByteByByte(bytes, from, bytes.length, p1, p2),
+                        SwarScanner.indexOf(bytes, from, bytes.length, p1, p2));
+                assertEquals(SwarScanner.indexOfByteByByte(bytes, from, bytes.length, p1, p2, p3),
+                        SwarScanner.indexOf(bytes, from, bytes.length, p1, p2, p3));
+            }
+        }
+    }
+}
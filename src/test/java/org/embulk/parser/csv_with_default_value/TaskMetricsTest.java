@@ -0,0 +1,120 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigSource;
+import org.embulk.parser.csv_with_default_value.CsvWithDefaultValueParserPlugin.PluginTask;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TaskMetricsTest
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static PluginTask newTask(boolean metrics)
+    {
+        ConfigSource config = Exec.newConfigSource()
+                .set("newline", "LF")
+                .set("metrics", metrics)
+                .set("columns", ImmutableList.of(
+                        ImmutableMap.of("name", "id", "type", "long"),
+                        ImmutableMap.of("name", "note", "type", "string")))
+                .set("default_values", ImmutableMap.of("id", ImmutableMap.of("default_value", 0, "type", "immediate")));
+        return config.loadConfig(PluginTask.class);
+    }
+
+    private static void parse(PluginTask task, Schema schema, ColumnConversionPlan plan, TaskMetrics metrics, String text)
+    {
+        try (LineSource lineSource = LineSource.of(TestCsvTokenizer.newFileInputFromText(text), task, metrics);
+                PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), schema, new PageOutput()
+                {
+                    public void add(Page page)
+                    {
+                        page.release();
+                    }
+
+                    public void finish()
+                    {
+                    }
+
+                    public void close()
+                    {
+                    }
+                })) {
+            CsvTokenizer tokenizer = new CsvTokenizer(lineSource, task);
+            tokenizer.setMetrics(plan.getMetrics());
+            for (int fileIndex = 0; tokenizer.nextFile(); fileIndex++) {
+                CsvWithDefaultValueParserPlugin.parseRecords(task, tokenizer, plan, pageBuilder, fileIndex);
+            }
+            pageBuilder.finish();
+        }
+    }
+
+    @Test
+    public void testCounts() throws Exception
+    {
+        PluginTask task = newTask(true);
+        Schema schema = ColumnConversionPlan.outputSchema(task.getSchemaConfig());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ParserMetrics.SAMPLE_INTERVAL * 2; i++) {
+            text.append(i).append(",n\n");
+        }
+        text.append("x,\"multi\nline\"\n");  // default value
+        text.append("1\n");  // too few columns
+        text.append("2,\"unterminated\n");
+
+        ColumnConversionPlan plan = ColumnConversionPlan.compile(task, schema);
+        try (TaskMetrics metrics = TaskMetrics.start(schema, Exec.getLogger(TaskMetricsTest.class))) {
+            metrics.add(plan);
+            parse(task, schema, plan, metrics, text.toString());
+
+            assertEquals(text.length(), metrics.getBytesRead());
+            assertEquals(ParserMetrics.SAMPLE_INTERVAL * 2 + 4, metrics.getLinesRead());
+            assertEquals(ParserMetrics.SAMPLE_INTERVAL * 2 + 1, metrics.getRecordsEmitted());
+            assertEquals(ImmutableMap.of("TooFewColumnsException", 1L, "InvalidValueException", 1L), metrics.getRecordsSkipped());
+            assertEquals(ImmutableMap.of("id", 1L, "note", 0L), metrics.getDefaultsApplied());
+            assertEquals(2, metrics.getMultiLineValues());
+            Map<String, Double> nanos = metrics.getConversionNanosPerValue();
+            assertEquals(ImmutableList.of("long", "string"), ImmutableList.copyOf(nanos.keySet()));
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> names = server.queryNames(new ObjectName("org.embulk.parser.csv_with_default_value:type=TaskMetrics,*"), null);
+            assertEquals(1, names.size());
+            ObjectName name = names.iterator().next();
+            assertEquals(ParserMetrics.SAMPLE_INTERVAL * 2 + 1, (long) (Long) server.getAttribute(name, "RecordsEmitted"));
+
+            metrics.close();
+            assertFalse(server.isRegistered(name));
+        }
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        PluginTask task = newTask(false);
+        Schema schema = ColumnConversionPlan.outputSchema(task.getSchemaConfig());
+        ColumnConversionPlan plan = ColumnConversionPlan.compile(task, schema);
+        assertNull(plan.getMetrics());
+        parse(task, schema, plan, null, "1,a\n2,\"b\nc\"\n");
+        assertTrue(plan.getReport().getSkippedLines() == 0);
+    }
+}
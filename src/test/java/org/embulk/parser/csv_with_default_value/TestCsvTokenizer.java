@@ -0,0 +1,294 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.embulk.EmbulkTestRuntime;
+import org.embulk.config.ConfigSource;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Exec;
+import org.embulk.spi.FileInput;
+import org.embulk.spi.util.LineDecoder;
+import org.embulk.spi.util.ListFileInput;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestCsvTokenizer {
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private ConfigSource config;
+
+    @Before
+    public void setUp()
+    {
+        config = Exec.newConfigSource()
+                .set("newline", "LF")
+                .set("columns", ImmutableList.of(
+                        ImmutableMap.of("name", "c1", "type", "string"),
+                        ImmutableMap.of("name", "c2", "type", "string")));
+    }
+
+    static FileInput newFileInputFromText(String text)
+    {
+        return new ListFileInput(
+                ImmutableList.of(ImmutableList.of(
+                        Buffer.copyOf(text.getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    static List<List<String>> parse(CsvWithDefaultValueParserPlugin.PluginTask task, String text)
+    {
+        return parse(task, new CsvTokenizer(new LineDecoder(newFileInputFromText(text), task), task));
+    }
+
+    // splits the bytes into buffers at the given positions
+    static List<List<String>> parseBytes(CsvWithDefaultValueParserPlugin.PluginTask task, byte[] bytes, int... splits)
+    {
+        List<Buffer> buffers = new ArrayList<>();
+        int start = 0;
+        for (int split : splits) {
+            buffers.add(Buffer.copyOf(bytes, start, split - start));
+            start = split;
+        }
+        buffers.add(Buffer.copyOf(bytes, start, bytes.length - start));
+        FileInput input = new ListFileInput(ImmutableList.of(buffers));
+        return parse(task, new CsvTokenizer(new ByteLineSource(input, task.getCharset()), task));
+    }
+
+    private static List<List<String>> parse(CsvWithDefaultValueParserPlugin.PluginTask task, CsvTokenizer tokenizer)
+    {
+        List<List<String>> records = new ArrayList<>();
+        while (tokenizer.nextFile()) {
+            while (tokenizer.nextRecord()) {
+                List<String> record = new ArrayList<>();
+                for (int i = 0; i < 2; i++) {
+                    ColumnToken token = tokenizer.nextColumnTokenOrNull();
+                    record.add(token == null ? null : token.toString());
+                }
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private List<List<String>> parse(String text)
+    {
+        return parse(config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class), text);
+    }
+
+    private static List<String> record(String... values)
+    {
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+    @Test
+    public void testSimple()
+    {
+        assertEquals(ImmutableList.of(record("aaa", "bbb"), record("ccc", "ddd")),
+                parse("aaa,bbb\nccc,ddd"));
+    }
+
+    @Test
+    public void testEmptyValuesAreNull()
+    {
+        // quoted empty string is an empty string
+        assertEquals(ImmutableList.of(record("", "bbb"), record("ccc", null)),
+                parse("\"\",bbb\nccc,"));
+    }
+
+    @Test
+    public void testNullString()
+    {
+        config.set("null_string", "NULL");
+        assertEquals(ImmutableList.of(record(null, ""), record("NULLx", null)),
+                parse("NULL,\nNULLx,NULL"));
+    }
+
+    @Test
+    public void testQuotedValues()
+    {
+        assertEquals(ImmutableList.of(record("a,b", "c\"d"), record("e\nf", "g")),
+                parse("\"a,b\",\"c\"\"d\"\n\"e\nf\",g"));
+    }
+
+    @Test
+    public void testQuotedSizeLimit()
+    {
+        config.set("max_quoted_size_limit", 5);
+        CsvWithDefaultValueParserPlugin.PluginTask task = config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class);
+        // the newline of a multi-line value is counted
+        String text = "\"abcde\",\"a\"\"b\nc\"";
+        assertEquals(ImmutableList.of(record("abcde", "a\"b\nc")), parse(task, text));
+        assertEquals(ImmutableList.of(record("abcde", "a\"b\nc")), parseBytes(task, text.getBytes(StandardCharsets.UTF_8)));
+
+        for (String tooLong : new String[] { "\"abcdef\",x", "x,\"ab\ncde\"" }) {
+            try {
+                parse(task, tooLong);
+                fail();
+            } catch (CsvTokenizer.QuotedSizeLimitExceededException ex) {
+            }
+            try {
+                parseBytes(task, tooLong.getBytes(StandardCharsets.UTF_8));
+                fail();
+            } catch (CsvTokenizer.QuotedSizeLimitExceededException ex) {
+            }
+        }
+    }
+
+    @Test
+    public void testSkipCurrentLineRecoversLinesOfQuotedValue()
+    {
+        CsvWithDefaultValueParserPlugin.PluginTask task = config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class);
+        CsvTokenizer tokenizer = new CsvTokenizer(new LineDecoder(newFileInputFromText("a,\"b\nc,d\ne,f\"x\ng,h"), task), task);
+        assertTrue(tokenizer.nextFile());
+        assertTrue(tokenizer.nextRecord());
+        assertEquals("a", tokenizer.nextColumn());
+        try {
+            tokenizer.nextColumn();
+            fail();
+        } catch (CsvTokenizer.InvalidValueException ex) {
+        }
+        assertEquals("a,\"b", tokenizer.skipCurrentLine());
+        assertEquals(1, tokenizer.getCurrentLineNumber());
+
+        // the other lines are parsed again
+        List<String> values = new ArrayList<>();
+        while (tokenizer.nextRecord()) {
+            values.add(tokenizer.nextColumn());
+            values.add(tokenizer.nextColumn());
+        }
+        assertEquals(ImmutableList.of("c", "d", "e", "f\"x", "g", "h"), values);
+        assertEquals(4, tokenizer.getCurrentLineNumber());
+    }
+
+    @Test
+    public void testMultiCharDelimiter()
+    {
+        config.set("delimiter", "::");
+        assertEquals(ImmutableList.of(record("a:b", "c")),
+                parse("a:b::c"));
+    }
+
+    @Test
+    public void testTrimIfNotQuoted()
+    {
+        config.set("trim_if_not_quoted", true);
+        assertEquals(ImmutableList.of(record("a b", " c ")),
+                parse("  a b  ,\" c \" "));
+    }
+
+    @Test
+    public void testTokenMatchesNextColumn()
+    {
+        CsvWithDefaultValueParserPlugin.PluginTask task = config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class);
+        CsvTokenizer tokenizer = new CsvTokenizer(new LineDecoder(newFileInputFromText("abc,\"d\"\"e\""), task), task);
+        assertTrue(tokenizer.nextFile());
+        assertTrue(tokenizer.nextRecord());
+        ColumnToken token = tokenizer.nextColumnToken();
+        assertEquals(3, token.length());
+        assertEquals('b', token.charAt(1));
+        assertTrue(token.contentEquals("abc"));
+        assertEquals("d\"e", tokenizer.nextColumn());
+    }
+
+    @Test
+    public void testByteLevelTokenizerMatchesLineDecoder()
+    {
+        config.set("null_string", "NULL");
+        CsvWithDefaultValueParserPlugin.PluginTask task = config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class);
+        String[] texts = {
+            "aaa,bbb\nccc,ddd\n",
+            "\uFEFF\u3042\u3044,\u00e9\r\n\"\u3046\"\"\r\n\u3048\",NULL\r\n\r\nx,y",
+            "a,b\rc,d\r\n\"e\rf\",\"\"",
+            "\"\u3042\\\"\u3044\",\"\u3046\n\n\u3048\"\n",
+        };
+        for (String text : texts) {
+            List<List<String>> expected = parse(task, text);
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            assertEquals(text, expected, parseBytes(task, bytes));
+            for (int i = 0; i <= bytes.length; i++) {
+                for (int j = i; j <= bytes.length; j += 3) {
+                    assertEquals(text, expected, parseBytes(task, bytes, i, j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testByteLevelTokenizerWithTrimAndMultiCharDelimiter()
+    {
+        config.set("trim_if_not_quoted", true).set("delimiter", ", ");
+        CsvWithDefaultValueParserPlugin.PluginTask task = config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class);
+        String text = "  long value with spaces  , \"q, \" \nx,y, \u3042\u3044 \u3046  \n";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        assertEquals(ImmutableList.of(record("long value with spaces", "q, "), record("x,y", "\u3042\u3044 \u3046")),
+                parseBytes(task, bytes));
+        assertEquals(parse(task, text), parseBytes(task, bytes));
+    }
+
+    @Test
+    public void testNulInUnquotedValueIsSameInBothModes()
+    {
+        String text = "x,abcdefghij\0klmnopqrstuvwxyz\ny,ab\0c\n";
+        CsvWithDefaultValueParserPlugin.PluginTask task = config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class);
+        assertEquals(parse(task, text), parseBytes(task, text.getBytes(StandardCharsets.UTF_8)));
+
+        CsvWithDefaultValueParserPlugin.PluginTask trimTask = config.deepCopy().set("trim_if_not_quoted", true).loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class);
+        assertEquals(parse(trimTask, text), parseBytes(trimTask, text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testNulInQuotedValueEndsLine()
+    {
+        // the rest of the line after NUL is dropped as it was before the quoted value was scanned in runs
+        String text = "x,\"a\0zz\nb\"\n";
+        CsvWithDefaultValueParserPlugin.PluginTask task = config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class);
+        assertEquals(ImmutableList.of(record("x", "a\0\nb")), parse(task, text));
+        assertEquals(parse(task, text), parseBytes(task, text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testSkipRestOfRecordCountsColumns()
+    {
+        config.set("delimiter", ", ");
+        CsvWithDefaultValueParserPlugin.PluginTask task = config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class);
+        String text = "a, b,c, d\na, b,c\n";
+        for (boolean byteLevel : new boolean[] {false, true}) {
+            LineSource source = byteLevel
+                    ? new ByteLineSource(newFileInputFromText(text), StandardCharsets.UTF_8)
+                    : LineSource.of(new LineDecoder(newFileInputFromText(text), task));
+            CsvTokenizer tokenizer = new CsvTokenizer(source, task);
+            assertTrue(tokenizer.nextFile());
+            assertTrue(tokenizer.nextRecord());
+            assertEquals("a", tokenizer.nextColumn());
+            assertFalse(tokenizer.skipRestOfRecord(3));  // "b,c" is a column
+            assertTrue(tokenizer.skipRestOfRecord(2));
+            assertFalse(tokenizer.hasNextColumn());
+            assertTrue(tokenizer.nextRecord());
+            assertEquals("a", tokenizer.nextColumn());
+            assertFalse(tokenizer.skipRestOfRecord(2));
+            assertTrue(tokenizer.skipRestOfRecord(1));
+        }
+    }
+
+    @Test
+    public void testByteLevelTokenizerIsUsedOnlyForAsciiOptions()
+    {
+        assertTrue(ByteLineSource.supports(config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class)));
+        assertTrue(ByteLineSource.supports(config.deepCopy().set("charset", "ISO-8859-1").loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class)));
+        assertFalse(ByteLineSource.supports(config.deepCopy().set("charset", "Shift_JIS").loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class)));
+        assertFalse(ByteLineSource.supports(config.deepCopy().set("delimiter", "\u3001").loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class)));
+        assertFalse(ByteLineSource.supports(config.deepCopy().set("null_string", "\u306a\u3057").loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class)));
+        assertFalse(ByteLineSource.supports(config.deepCopy().set("true_strings", ImmutableList.of("\u306f\u3044")).loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class)));
+        assertFalse(ByteLineSource.supports(config.deepCopy().set("default_values", ImmutableMap.of("c1",
+                ImmutableMap.of("type", "null", "bad_tokens", ImmutableList.of("\u306a\u3057")))).loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class)));
+    }
+}
@@ -3,6 +3,7 @@ package org.embulk.parser.csv_with_default_value;
 import com.google.common.collect.Maps;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.assertEquals;
 import java.nio.charset.Charset;
 import com.google.common.base.Optional;
@@ -11,10 +12,27 @@ import com.google.common.collect.ImmutableMap;
 import org.joda.time.DateTimeZone;
 import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskSource;
+import org.embulk.spi.Buffer;
 import org.embulk.spi.Exec;
+import org.embulk.spi.FileInput;
+import org.embulk.spi.MockFormatterPlugin;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.ParserPlugin;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.spi.util.ListFileInput;
 import org.embulk.spi.util.Newline;
 import org.embulk.EmbulkTestRuntime;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 
 public class TestCsvWithDefaultValueParserPlugin {
 
@@ -22,6 +40,9 @@ public class TestCsvWithDefaultValueParserPlugin {
     @Rule
     public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void checkDefaultValues()
     {
@@ -80,6 +101,7 @@ public class TestCsvWithDefaultValueParserPlugin {
         assertEquals("\t", task.getDelimiter());
         assertEquals(Optional.of(new CsvWithDefaultValueParserPlugin.QuoteCharacter('\\')), task.getQuoteChar());
         assertEquals(true, task.getAllowOptionalColumns());
+        assertEquals(false, task.getByteLevelTokenizer());
 
         assertEquals(ImmutableMap.of(
                 "longCol", new ColumnDefaultValueImpl("123", ColumnDefaultValue.ValueType.IMMEDIATE),
@@ -93,5 +115,239 @@ public class TestCsvWithDefaultValueParserPlugin {
 
     }
 
+    @Test(expected = ConfigException.class)
+    public void checkDefaultValueForUnknownColumnFails()
+    {
+        ConfigSource config = Exec.newConfigSource()
+                .set("columns", ImmutableList.of(
+                        ImmutableMap.of(
+                                "name", "longCol",
+                                "type", "long")))
+                .set("default_values", ImmutableMap.of(
+                        "unknownCol", ImmutableMap.of("default_value", 123, "type", "immediate")));
+
+        ColumnConversionPlan.validate(config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void checkNullDefaultValueForLongColumnFails()
+    {
+        ConfigSource config = Exec.newConfigSource()
+                .set("columns", ImmutableList.of(
+                        ImmutableMap.of(
+                                "name", "longCol",
+                                "type", "long")))
+                .set("default_values", ImmutableMap.of(
+                        "longCol", ImmutableMap.of("type", "null")));
+
+        ColumnConversionPlan.validate(config.loadConfig(CsvWithDefaultValueParserPlugin.PluginTask.class));
+    }
+
+    private static List<List<Object>> parse(ConfigSource config, String text, List<Schema> outputSchema)
+    {
+        return parse(config, TestCsvTokenizer.newFileInputFromText(text), outputSchema);
+    }
+
+    private static List<List<Object>> parse(ConfigSource config, final FileInput input, final List<Schema> outputSchema)
+    {
+        final CsvWithDefaultValueParserPlugin plugin = new CsvWithDefaultValueParserPlugin();
+        final List<List<Object>> records = new ArrayList<>();
+        plugin.transaction(config, new ParserPlugin.Control()
+        {
+            public void run(TaskSource taskSource, final Schema schema)
+            {
+                outputSchema.add(schema);
+                plugin.run(taskSource, schema, input, new PageOutput()
+                {
+                    public void add(Page page)
+                    {
+                        records.addAll(MockFormatterPlugin.readPage(schema, page));
+                    }
+
+                    public void finish()
+                    {
+                    }
+
+                    public void close()
+                    {
+                    }
+                });
+            }
+        });
+        return records;
+    }
+
+    private static ConfigSource configWithSkippedColumns()
+    {
+        return Exec.newConfigSource()
+                .set("newline", "LF")
+                .set("columns", ImmutableList.of(
+                        ImmutableMap.of("name", "a", "type", "string"),
+                        ImmutableMap.of("name", "b", "type", "long", "skip", true),
+                        ImmutableMap.of("name", "c", "type", "long"),
+                        ImmutableMap.of("name", "d", "type", "timestamp", "skip", true),
+                        ImmutableMap.of("name", "e", "type", "string", "skip", true)));
+    }
+
+    @Test
+    public void checkSkippedColumns()
+    {
+        List<Schema> schema = new ArrayList<>();
+        // skipped columns are not converted, so invalid values in them are ignored
+        List<List<Object>> records = parse(configWithSkippedColumns(), "x,1,2,invalid,y\nz,\"p\nq\",3,,\"r\ns\"\nshort,1,2\n", schema);
+
+        assertEquals(Schema.builder().add("a", Types.STRING).add("c", Types.LONG).build().getColumns(), schema.get(0).getColumns());
+        assertEquals(ImmutableList.of(ImmutableList.<Object>of("x", 2L), ImmutableList.<Object>of("z", 3L)), records);
+        assertEquals(records, parse(configWithSkippedColumns().set("byte_level_tokenizer", true),
+                    "x,1,2,invalid,y\nz,\"p\nq\",3,,\"r\ns\"\nshort,1,2\n", new ArrayList<Schema>()));
+    }
+
+    @Test
+    public void checkSkippedColumnsAtTheEndAreExtraColumnsIfAllowed()
+    {
+        ConfigSource config = configWithSkippedColumns().set("allow_extra_columns", true);
+        // the rest of a line is not tokenized after column c unless it has a quote,
+        // but lines without columns d and e are invalid
+        String text = "x,1,2,invalid,y,extra\nz,\"p\nq\",3,,\"r\ns\"\nshort,1,2\nshort,1,2,invalid\n";
+        List<List<Object>> records = parse(config, text, new ArrayList<Schema>());
+
+        assertEquals(ImmutableList.of(
+                ImmutableList.<Object>of("x", 2L),
+                ImmutableList.<Object>of("z", 3L)), records);
+        assertEquals(records, parse(config.deepCopy().set("byte_level_tokenizer", true), text, new ArrayList<Schema>()));
+
+        records = parse(config.deepCopy().set("allow_optional_columns", true), text, new ArrayList<Schema>());
+        assertEquals(ImmutableList.of(
+                ImmutableList.<Object>of("x", 2L),
+                ImmutableList.<Object>of("z", 3L),
+                ImmutableList.<Object>of("short", 2L),
+                ImmutableList.<Object>of("short", 2L)), records);
+    }
+
+    @Test
+    public void checkRejectsPath() throws Exception
+    {
+        ConfigSource config = configWithSkippedColumns()
+                .set("rejects_path", new File(folder.getRoot(), "rejects").getPath());
+        List<List<Object>> records = parse(config, "x,1,2,,\ny,1,invalid,,\nz,1,3,,\n\"broken\n", new ArrayList<Schema>());
+
+        assertEquals(ImmutableList.of(ImmutableList.<Object>of("x", 2L), ImmutableList.<Object>of("z", 3L)), records);
+        File[] files = folder.getRoot().listFiles();
+        assertEquals(1, files.length);
+        assertEquals(ImmutableList.of(
+                "file_index,line_number,exception,message,line",
+                "0,2,\"org.embulk.parser.csv_with_default_value.CsvRecordValidateException\",\"java.lang.NumberFormatException: For input string: \"\"invalid\"\"\",\"y,1,invalid,,\"",
+                "0,4,\"org.embulk.parser.csv_with_default_value.CsvTokenizer$InvalidValueException\",\"Unexpected end of line during parsing a quoted value\",\"\"\"broken\""),
+                Files.readAllLines(files[0].toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void checkBadTokens()
+    {
+        ConfigSource config = Exec.newConfigSource()
+                .set("newline", "LF")
+                .set("columns", ImmutableList.of(
+                        ImmutableMap.of("name", "l", "type", "long"),
+                        ImmutableMap.of("name", "t", "type", "timestamp", "format", "%Y-%m-%d")))
+                .set("default_values", ImmutableMap.of(
+                        "l", ImmutableMap.of("default_value", -1, "bad_tokens", ImmutableList.of("N/A", "-")),
+                        "t", ImmutableMap.of("type", "null", "bad_tokens", ImmutableList.of("n.a."))));
+        List<List<Object>> records = parse(config, "1,2000-01-02\nN/A,n.a.\n-,x\n", new ArrayList<Schema>());
+
+        assertEquals(3, records.size());
+        assertEquals(ImmutableList.of(1L, -1L, -1L), ImmutableList.of(records.get(0).get(0), records.get(1).get(0), records.get(2).get(0)));
+        assertEquals(null, records.get(1).get(1));
+        assertEquals(null, records.get(2).get(1));
+    }
+
+    private static FileInput newFileInputFromTexts(String... texts)
+    {
+        ImmutableList.Builder<List<Buffer>> files = ImmutableList.builder();
+        for (String text : texts) {
+            files.add(ImmutableList.of(Buffer.copyOf(text.getBytes(StandardCharsets.UTF_8))));
+        }
+        return new ListFileInput(files.build());
+    }
+
+    @Test
+    public void checkHeaderMapping()
+    {
+        ConfigSource config = configWithSkippedColumns().set("header_mapping", true);
+        List<List<Object>> expected = ImmutableList.of(
+                ImmutableList.<Object>of("x", 1L),
+                ImmutableList.<Object>of("y", 2L),
+                Arrays.<Object>asList(null, 3L),
+                ImmutableList.<Object>of("z", 4L));
+        // reordered columns, an unknown column, a missing column and a multi-line header name
+        String[] files = {
+            "a,b,c,d,e\nx,0,1,,\n",
+            "\"unknown\nname\",c,e,a\n\"p\nq\",2,\"r\ns\",y\n",
+            "c,unknown\n3,invalid\n",
+            "",
+            "c,a,a\n4,z,ignored\n",
+        };
+
+        assertEquals(expected, parse(config, newFileInputFromTexts(files), new ArrayList<Schema>()));
+        assertEquals(expected, parse(config.deepCopy().set("parser_threads", 2), newFileInputFromTexts(files), new ArrayList<Schema>()));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void checkHeaderMappingWithSkipHeaderLinesFails()
+    {
+        parse(configWithSkippedColumns().set("header_mapping", true).set("skip_header_lines", 1), "", new ArrayList<Schema>());
+    }
+
+    @Test
+    public void checkInternCache()
+    {
+        ConfigSource config = Exec.newConfigSource()
+                .set("newline", "LF")
+                .set("intern_cache_size", 1)
+                .set("columns", ImmutableList.of(
+                        ImmutableMap.of("name", "a", "type", "string"),
+                        ImmutableMap.of("name", "b", "type", "string", "intern_cache_size", 0)));
+        List<List<Object>> records = parse(config, "JP,x\nUS,y\nJP,x\n", new ArrayList<Schema>());
+
+        assertEquals(ImmutableList.of(
+                ImmutableList.<Object>of("JP", "x"),
+                ImmutableList.<Object>of("US", "y"),
+                ImmutableList.<Object>of("JP", "x")), records);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void checkNonPositiveInternCacheMaxBytesFails()
+    {
+        ConfigSource config = Exec.newConfigSource()
+                .set("intern_cache_size", 10)
+                .set("columns", ImmutableList.of(
+                        ImmutableMap.of("name", "a", "type", "string", "intern_cache_max_bytes", 0)));
+        parse(config, "", new ArrayList<Schema>());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void checkNegativePageSizeFails()
+    {
+        ConfigSource config = Exec.newConfigSource()
+                .set("page_size", -1)
+                .set("columns", ImmutableList.of(ImmutableMap.of("name", "a", "type", "long")));
+        parse(config, "", new ArrayList<Schema>());
+    }
+
+    @Test
+    public void checkPagePool()
+    {
+        ConfigSource config = Exec.newConfigSource()
+                .set("newline", "LF")
+                .set("page_size", 256)
+                .set("page_pool_size", 2)
+                .set("columns", ImmutableList.of(
+                        ImmutableMap.of("name", "a", "type", "long"),
+                        ImmutableMap.of("name", "b", "type", "string")));
+        List<List<Object>> records = parse(config, "1,x\n2,y\n3,z\n", new ArrayList<Schema>());
 
+        assertEquals(ImmutableList.of(
+                ImmutableList.<Object>of(1L, "x"),
+                ImmutableList.<Object>of(2L, "y"),
+                ImmutableList.<Object>of(3L, "z")), records);
+    }
 }
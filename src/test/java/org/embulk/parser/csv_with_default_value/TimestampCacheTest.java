@@ -0,0 +1,35 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.embulk.spi.time.Timestamp;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimestampCacheTest {
+
+    @Test
+    public void testGetAndPut(){
+        TimestampCache cache = new TimestampCache(10);
+        assertNull(cache.get("2016-01-01 00:00:00"));
+
+        cache.put("2016-01-01 00:00:00", Timestamp.ofEpochSecond(1451606400L));
+        cache.putFailure("N/A");
+
+        assertEquals(Timestamp.ofEpochSecond(1451606400L), cache.get("2016-01-01 00:00:00"));
+        assertSame(TimestampCache.FAILURE, cache.get("N/A"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed(){
+        TimestampCache cache = new TimestampCache(2);
+        cache.put("a", Timestamp.ofEpochSecond(1));
+        cache.put("b", Timestamp.ofEpochSecond(2));
+        cache.get("a");
+        cache.put("c", Timestamp.ofEpochSecond(3));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals(Timestamp.ofEpochSecond(1), cache.get("a"));
+        assertEquals(Timestamp.ofEpochSecond(3), cache.get("c"));
+    }
+}
@@ -0,0 +1,39 @@
+package org.embulk.parser.csv_with_default_value;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TokenMatcherTest {
+
+    @Test
+    public void testMatches(){
+        TokenMatcher matcher = TokenMatcher.of(ImmutableList.of("true", "TRUE", "t", "1", "yes"));
+
+        assertTrue(matcher.matches("true"));
+        assertTrue(matcher.matches("TRUE"));
+        assertTrue(matcher.matches("t"));
+        assertTrue(matcher.matches("1"));
+        assertFalse(matcher.matches("True"));
+        assertFalse(matcher.matches("tru"));
+        assertFalse(matcher.matches("truex"));
+        assertFalse(matcher.matches(""));
+        assertTrue(matcher.matches("[yes]", 1, 4));
+    }
+
+    @Test
+    public void testEmpty(){
+        TokenMatcher matcher = TokenMatcher.of(ImmutableList.<String>of());
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.matches(""));
+        assertFalse(matcher.matches("a"));
+    }
+
+    @Test
+    public void testEmptyString(){
+        TokenMatcher matcher = TokenMatcher.of(ImmutableList.of("", "-"));
+        assertTrue(matcher.matches(""));
+        assertTrue(matcher.matches("-"));
+    }
+}
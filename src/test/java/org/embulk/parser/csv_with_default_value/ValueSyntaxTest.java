@@ -0,0 +1,39 @@
+package org.embulk.parser.csv_with_default_value;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ValueSyntaxTest {
+
+    @Test
+    public void testMayBeDouble(){
+        // everything Double.parseDouble accepts must pass
+        for (String s : new String[] {"0", "-1.5", "+.5", "1e10", "1.5E-3", " 2 ", "NaN", "-Infinity", "1d", "2F", "0x1.8p1"}) {
+            Double.parseDouble(s);
+            assertTrue(s, ValueSyntax.mayBeDouble(s));
+        }
+        for (String s : new String[] {"", " ", "N/A", "null", "-", "1,000", "abc", "#"}) {
+            assertFalse(s, ValueSyntax.mayBeDouble(s));
+        }
+    }
+
+    @Test
+    public void testMayBeTimestamp(){
+        assertTrue(ValueSyntax.mayBeTimestamp("2016-01-01 00:00:00"));
+        assertTrue(ValueSyntax.mayBeTimestamp("Jan 1"));
+        assertFalse(ValueSyntax.mayBeTimestamp(""));
+        assertFalse(ValueSyntax.mayBeTimestamp("N/A"));
+        assertFalse(ValueSyntax.mayBeTimestamp("unknown"));
+    }
+
+    @Test
+    public void testMayBeJson(){
+        for (String s : new String[] {"{}", " [1]", "\"s\"", "-1", "0.5", "true", "false", "null"}) {
+            assertTrue(s, ValueSyntax.mayBeJson(s));
+        }
+        for (String s : new String[] {"", " ", "#N/A", "abc", "<xml/>"}) {
+            assertFalse(s, ValueSyntax.mayBeJson(s));
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.embulk.parser.csv_with_default_value;
 import org.embulk.config.ConfigException;
 import org.embulk.spi.Column;
 import org.embulk.spi.PageBuilder;
+import org.embulk.spi.json.JsonParser;
 import org.embulk.spi.type.Types;
 import org.junit.Test;
 
@@ -44,4 +45,39 @@ public class ValueTypeTest {
         NULL.doubleValue(new ColumnDefaultValueImpl("123", NULL), mock(PageBuilder.class), new Column(0, "", Types.DOUBLE));
     }
 
+    @Test
+    public void testResolveValueMethods(){
+        PageBuilder pageBuilder = mock(PageBuilder.class);
+
+        IMMEDIATE.resolveLong(new ColumnDefaultValueImpl("123", IMMEDIATE), "longCol").setTo(pageBuilder, new Column(0, "longCol", Types.LONG));
+        IMMEDIATE.resolveDouble(new ColumnDefaultValueImpl("1.5", IMMEDIATE), "doubleCol").setTo(pageBuilder, new Column(1, "doubleCol", Types.DOUBLE));
+        verify(pageBuilder).setLong(new Column(0, "longCol", Types.LONG), 123L);
+        verify(pageBuilder).setDouble(new Column(1, "doubleCol", Types.DOUBLE), 1.5);
+        assertTrue(NULL.resolveTimestamp(new ColumnDefaultValueImpl(), null, "timestampCol").isNull());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testResolveInvalidLongFails(){
+        IMMEDIATE.resolveLong(new ColumnDefaultValueImpl("N/A", IMMEDIATE), "longCol");
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testResolveInvalidDoubleFails(){
+        IMMEDIATE.resolveDouble(new ColumnDefaultValueImpl("N/A", IMMEDIATE), "doubleCol");
+    }
+
+    @Test
+    public void testResolveJson(){
+        PageBuilder pageBuilder = mock(PageBuilder.class);
+
+        IMMEDIATE.resolveJson(new ColumnDefaultValueImpl("{\"a\":[1]}", IMMEDIATE), "jsonCol").setTo(pageBuilder, new Column(0, "jsonCol", Types.JSON));
+        verify(pageBuilder).setJson(new Column(0, "jsonCol", Types.JSON), new JsonParser().parse("{\"a\":[1]}"));
+        assertTrue(NULL.resolveJson(new ColumnDefaultValueImpl(), "jsonCol").isNull());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testResolveInvalidJsonFails(){
+        IMMEDIATE.resolveJson(new ColumnDefaultValueImpl("{", IMMEDIATE), "jsonCol");
+    }
+
 }
\ No newline at end of file